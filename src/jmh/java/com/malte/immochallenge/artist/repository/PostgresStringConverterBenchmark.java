@@ -0,0 +1,31 @@
+package com.malte.immochallenge.artist.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class PostgresStringConverterBenchmark {
+    private final PostgresStringConverter converter = new PostgresStringConverter();
+    private List<String> genres;
+    private String column;
+
+    @Setup
+    public void setUp() {
+        genres = List.of("rock", "alternative rock", "indie", "post-grunge", "modern rock");
+        column = converter.convertToDatabaseColumn(genres);
+    }
+
+    @Benchmark
+    public String convertToDatabaseColumn() {
+        return converter.convertToDatabaseColumn(genres);
+    }
+
+    @Benchmark
+    public List<String> convertToEntityAttribute() {
+        return converter.convertToEntityAttribute(column);
+    }
+}
@@ -0,0 +1,33 @@
+package com.malte.immochallenge.mapper;
+
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.spotify.SpotifyFixtures;
+import com.malte.immochallenge.spotify.model.SpotifyAlbum;
+import com.malte.immochallenge.spotify.model.SpotifyArtist;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class SpotifyApiMapperBenchmark {
+    private SpotifyArtist artist;
+    private SpotifyAlbum album;
+
+    @Setup
+    public void setUp() {
+        artist = SpotifyFixtures.artist(1);
+        album = SpotifyFixtures.album(1);
+    }
+
+    @Benchmark
+    public Artist artistFromSpotify() {
+        return SpotifyApiMapper.artistFromSpotify(artist);
+    }
+
+    @Benchmark
+    public Album albumFromSpotify() {
+        return SpotifyApiMapper.albumFromSpotify(album);
+    }
+}
@@ -0,0 +1,18 @@
+package com.malte.immochallenge.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class SearchInputSanitizerBenchmark {
+
+    @Param({"radiohead", "The Dark Side of the Moon (2011 Remaster)", "Sigur Rós: Ágætis byrjun"})
+    public String searchTerm;
+
+    @Benchmark
+    public String sanitize() {
+        return SearchInputSanitizer.sanitize(searchTerm);
+    }
+}
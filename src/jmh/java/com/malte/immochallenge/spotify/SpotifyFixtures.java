@@ -0,0 +1,82 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.model.SpotifyAlbum;
+import com.malte.immochallenge.spotify.model.SpotifyArtist;
+import com.malte.immochallenge.spotify.model.SpotifyExternalUrls;
+import com.malte.immochallenge.spotify.model.SpotifyImage;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * api objects with the size and shape of real responses
+ */
+public class SpotifyFixtures {
+    private static final List<String> MARKETS = Arrays.asList(Locale.getISOCountries());
+
+    public static SpotifyArtist artist(int index) {
+        var id = "artist" + index;
+        return SpotifyArtist.builder()
+                .id(id)
+                .name("artist " + index)
+                .type("artist")
+                .popularity(index % 100)
+                .followers(SpotifyArtist.SpotifyFollowers.builder().total(index * 1000L).build())
+                .genres(List.of("rock", "alternative rock", "indie"))
+                .href("https://api.spotify.com/v1/artists/" + id)
+                .uri("spotify:artist:" + id)
+                .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/artist/" + id).build())
+                .images(images(id))
+                .build();
+    }
+
+    public static SpotifyAlbum album(int index) {
+        var id = "album" + index;
+        return SpotifyAlbum.builder()
+                .id(id)
+                .name("album " + index)
+                .album_type("album")
+                .album_group("album")
+                .type("album")
+                .total_tracks(12)
+                .release_date("2020-05-01")
+                .release_date_precision("day")
+                .available_markets(MARKETS)
+                .href("https://api.spotify.com/v1/albums/" + id)
+                .uri("spotify:album:" + id)
+                .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/album/" + id).build())
+                .images(images(id))
+                .artists(List.of(SpotifyAlbum.SimplifiedArtist.builder()
+                        .id("artist" + index)
+                        .name("artist " + index)
+                        .type("artist")
+                        .href("https://api.spotify.com/v1/artists/artist" + index)
+                        .uri("spotify:artist:artist" + index)
+                        .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/artist/artist" + index).build())
+                        .build()))
+                .build();
+    }
+
+    /**
+     * a full page of the albums endpoint
+     */
+    public static SpotifyAlbumsResponse albumPage(int albums) {
+        return SpotifyAlbumsResponse.builder()
+                .href("https://api.spotify.com/v1/artists/artist0/albums?offset=0&limit=" + albums)
+                .limit(albums)
+                .offset(0)
+                .total(albums * 2)
+                .next("https://api.spotify.com/v1/artists/artist0/albums?offset=" + albums + "&limit=" + albums)
+                .items(IntStream.range(0, albums).mapToObj(SpotifyFixtures::album).toList())
+                .build();
+    }
+
+    private static List<SpotifyImage> images(String id) {
+        return List.of(640, 300, 64).stream()
+                .map(size -> SpotifyImage.builder().url("https://i.scdn.co/image/" + id + "-" + size).width(size).height(size).build())
+                .toList();
+    }
+}
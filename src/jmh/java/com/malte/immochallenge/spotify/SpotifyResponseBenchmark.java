@@ -0,0 +1,48 @@
+package com.malte.immochallenge.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.mapper.SpotifyApiMapper;
+import com.malte.immochallenge.mapper.SpotifyStreamingMapper;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * decoding a full page of the albums endpoint, once into the api model classes like the databind reader of
+ * {@link SpotifyService}, once into the model classes and mapped to entities like the sync did before and once
+ * straight into entities like the sync does. the gc profiler reports the bytes allocated per page
+ */
+@State(Scope.Benchmark)
+public class SpotifyResponseBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] albumPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        albumPage = objectMapper.writeValueAsBytes(SpotifyFixtures.albumPage(50));
+    }
+
+    @Benchmark
+    public SpotifyAlbumsResponse readAlbumsResponse() throws IOException {
+        return objectMapper.readValue(albumPage, SpotifyAlbumsResponse.class);
+    }
+
+    @Benchmark
+    public List<Album> readAlbumsResponseAndMap() throws IOException {
+        return objectMapper.readValue(albumPage, SpotifyAlbumsResponse.class).getItems().stream()
+                .map(SpotifyApiMapper::albumFromSpotify)
+                .toList();
+    }
+
+    @Benchmark
+    public SpotifyPage<Album> readAlbumPageStreaming() throws IOException {
+        return SpotifyStreamingMapper.readAlbumPage(albumPage);
+    }
+}
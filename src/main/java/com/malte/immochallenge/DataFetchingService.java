@@ -1,17 +1,40 @@
 package com.malte.immochallenge;
 
 import com.malte.immochallenge.album.AlbumService;
+import com.malte.immochallenge.album.model.Album;
 import com.malte.immochallenge.artist.ArtistService;
-import com.malte.immochallenge.mapper.SpotifyApiMapper;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.mapper.SpotifyStreamingMapper;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.spotify.AlbumPageConsumer;
+import com.malte.immochallenge.spotify.SpotifyCallGuard;
+import com.malte.immochallenge.spotify.SpotifyPageReader;
 import com.malte.immochallenge.spotify.SpotifyService;
 import com.malte.immochallenge.spotify.exception.SpotifyApiException;
 import com.malte.immochallenge.spotify.exception.SpotifyAuthException;
+import com.malte.immochallenge.sync.PipelineStage;
+import com.malte.immochallenge.sync.SyncConfiguration;
+import com.malte.immochallenge.sync.SyncJournal;
+import com.malte.immochallenge.sync.SyncLock;
+import com.malte.immochallenge.sync.SyncPlanner;
+import com.malte.immochallenge.sync.SyncRunRecorder;
+import com.malte.immochallenge.sync.SyncRunRecorder.Phase;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 
 
 @Service
@@ -19,24 +42,168 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class DataFetchingService {
     private final SpotifyService spotifyService;
+    private final SpotifyCallGuard spotifyCallGuard;
     private final ArtistService artistService;
     private final AlbumService albumService;
+    private final SyncPlanner syncPlanner;
+    private final SyncLock syncLock;
+    private final SyncJournal syncJournal;
+    private final SyncConfiguration syncConfiguration;
+    private final AutocompleteIndex autocompleteIndex;
 
-    @Scheduled(cron = "0 * * * * *")
+    /**
+     * synchronizes the artists that are due and their albums. every run only handles a bounded batch of
+     * artists, so the work per run stays the same as the number of configured artists grows.
+     * the album pages run through a pipeline: they are fetched concurrently, decoded straight into entities
+     * and handed to the persist workers through a bounded queue. the fetchers wait while the queue is full,
+     * so only a bounded number of pages is held in memory and fetching overlaps with persisting.
+     * as soon as an artist and all its albums are persisted, its next synchronization is scheduled based on
+     * whether anything changed. every run is recorded in the sync journal, the autocompletion is rebuilt after
+     * every run that changed an artist or album.
+     * ticks are skipped while another synchronization is running on this or any other node
+     */
+    @Scheduled(cron = "${sync.cron:0 * * * * *}")
     public void getSpotifyDataPeriodically() {
+        syncLock.runExclusively(this::synchronize);
+    }
+
+    private void synchronize() {
         var synchronizationDate = LocalDateTime.now();
-        try {
-            var apiResponse = spotifyService.getDataFromSpotify();
-            var mappedArtists = apiResponse.getArtists().stream()
-                    .map(SpotifyApiMapper::artistFromSpotify)
-                    .toList();
-            var mappedAlbums = apiResponse.getAlbums().stream()
-                    .map(SpotifyApiMapper::albumFromSpotify)
-                    .toList();
-            artistService.handleNewArtists(mappedArtists, synchronizationDate);
-            albumService.handleNewAlbums(mappedAlbums, synchronizationDate);
+        var dueArtistIds = syncPlanner.getArtistIdsDueForSync(synchronizationDate);
+        if (dueArtistIds.isEmpty()) {
+            log.debug("no artists are due for synchronization");
+            return;
+        }
+        var run = syncJournal.start(dueArtistIds, synchronizationDate);
+        // calls to spotify fail fast once the run takes too long, the artists that are left stay due
+        try (var runDeadline = spotifyCallGuard.startRun()) {
+            var mappedArtists = run.measure(Phase.FETCH, () ->
+                    spotifyService.getArtistFromApi(dueArtistIds, measured(run, SpotifyStreamingMapper::readArtists)));
+            var artistResult = run.measure(Phase.PERSIST, () -> artistService.handleNewArtists(mappedArtists, synchronizationDate));
+            run.record(artistResult);
+            var artistsBySpotifyId = mappedArtists.stream()
+                    .collect(toMap(Artist::getSpotifyId, identity(), (first, second) -> first));
+            Set<String> changedArtistIds = ConcurrentHashMap.newKeySet();
+            changedArtistIds.addAll(artistResult.changedSpotifyIds());
+
+            // every artist holds one pending token until all its pages were fetched, every page holds one until it is persisted
+            Map<String, Integer> pendingByArtist = new ConcurrentHashMap<>();
+            dueArtistIds.forEach(artistId -> pendingByArtist.put(artistId, 1));
+            Set<String> failedArtistIds = ConcurrentHashMap.newKeySet();
+            Consumer<String> release = artistId -> {
+                if (pendingByArtist.computeIfPresent(artistId, (id, pending) -> pending == 1 ? null : pending - 1) == null) {
+                    completeArtist(run, artistId, artistsBySpotifyId.get(artistId), changedArtistIds,
+                            failedArtistIds.contains(artistId), synchronizationDate);
+                }
+            };
+
+            var streamStarted = System.nanoTime();
+            var mapNanosBefore = run.getNanos(Phase.MAP);
+            var blockedNanos = new LongAdder();
+            var persistStage = new PipelineStage<AlbumPage>("persist", syncConfiguration.getPersistWorkers(),
+                    syncConfiguration.getPipelineQueueCapacity(), page -> {
+                        var albumResult = run.measure(Phase.PERSIST, () -> albumService.handleNewAlbums(page.albums(), synchronizationDate));
+                        // the page is committed, only now the response cache may skip it on the next run
+                        page.handled().run();
+                        run.record(albumResult);
+                        if (albumResult.hasChanges()) {
+                            changedArtistIds.add(page.artistId());
+                        }
+                        release.accept(page.artistId());
+                    });
+            try (persistStage) {
+                // the pages are decoded straight into albums on the fetching threads
+                spotifyService.streamAlbumsFromApi(dueArtistIds, measured(run, SpotifyStreamingMapper::readAlbumPage), new AlbumPageConsumer<>() {
+                    @Override
+                    public void accept(String artistId, List<Album> albums) {
+                        accept(artistId, albums, () -> {
+                        });
+                    }
+
+                    @Override
+                    public void accept(String artistId, List<Album> albums, Runnable handled) {
+                        pendingByArtist.merge(artistId, 1, Integer::sum);
+                        var submitted = System.nanoTime();
+                        persistStage.submit(new AlbumPage(artistId, albums, handled));
+                        blockedNanos.add(System.nanoTime() - submitted);
+                    }
+
+                    @Override
+                    public void artistCompleted(String artistId) {
+                        release.accept(artistId);
+                    }
+
+                    @Override
+                    public void artistFailed(String artistId, RuntimeException exception) {
+                        failedArtistIds.add(artistId);
+                        release.accept(artistId);
+                    }
+                });
+                // time the fetchers were blocked by a full pipeline or spent decoding is not spent waiting for the api
+                var mapNanos = run.getNanos(Phase.MAP) - mapNanosBefore;
+                run.addNanos(Phase.FETCH, System.nanoTime() - streamStarted - blockedNanos.sum() - mapNanos);
+            }
+            // only reached if every page was persisted, a failed pipeline leaves the cache on disk as it was
+            spotifyService.flushResponseCache();
+            syncJournal.finish(run);
         } catch (SpotifyApiException | SpotifyAuthException exception) {
             log.error(exception.getMessage());
+            syncJournal.fail(run, exception);
+        } catch (RuntimeException exception) {
+            syncJournal.fail(run, exception);
+            throw exception;
+        } finally {
+            rebuildAutocompleteIfChanged(run);
+        }
+    }
+
+    /**
+     * also after a failed run, the artists and albums persisted before the failure stay
+     */
+    private void rebuildAutocompleteIfChanged(SyncRunRecorder run) {
+        if (!run.hasChanges()) {
+            return;
+        }
+        try {
+            autocompleteIndex.rebuild();
+        } catch (RuntimeException exception) {
+            // the old names are served until the next rebuild
+            log.error("could not rebuild the autocomplete index: {}", exception.getMessage());
         }
     }
+
+    /**
+     * called once all pages of the artist were persisted. scheduling every artist on its own makes the
+     * progress durable, an interrupted run resumes with the rest
+     */
+    private void completeArtist(SyncRunRecorder run, String artistId, Artist artist, Set<String> changedArtistIds,
+                                boolean failed, LocalDateTime synchronizationDate) {
+        if (failed) {
+            run.artistFailed(artistId);
+            return;
+        }
+        run.measure(Phase.PERSIST, () -> {
+            syncPlanner.recordSynchronization(List.of(artistId), Optional.ofNullable(artist).stream().toList(),
+                    changedArtistIds, synchronizationDate);
+            return null;
+        });
+        run.artistCompleted(artistId);
+    }
+
+    /**
+     * adds the time spent decoding the responses to the map phase
+     */
+    private static <T> SpotifyPageReader<T> measured(SyncRunRecorder run, SpotifyPageReader<T> reader) {
+        return body -> {
+            var started = System.nanoTime();
+            try {
+                return reader.read(body);
+            } finally {
+                run.addNanos(Phase.MAP, System.nanoTime() - started);
+            }
+        };
+    }
+
+    private record AlbumPage(String artistId, List<Album> albums, Runnable handled) {
+    }
 }
@@ -1,7 +1,13 @@
 package com.malte.immochallenge;
 
+import com.malte.immochallenge.spotify.SpotifyConfiguration;
+import com.malte.immochallenge.spotify.SpotifyHttpTransport;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
 import org.springframework.boot.web.client.RestClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -20,6 +26,26 @@ public class ImmochallengeApplication {
         return builder.build();
     }
 
+    @Bean
+    public PoolingHttpClientConnectionManager spotifyConnectionManager(SpotifyConfiguration configuration) {
+        return SpotifyHttpTransport.connectionManager(configuration);
+    }
+
+    /**
+     * makes the auto configured rest client builder use the pooled transport
+     */
+    @Bean
+    public ClientHttpRequestFactoryBuilder<?> clientHttpRequestFactoryBuilder(SpotifyConfiguration configuration,
+                                                                              PoolingHttpClientConnectionManager spotifyConnectionManager) {
+        return ClientHttpRequestFactoryBuilder.httpComponents()
+                .withHttpClientCustomizer(builder -> SpotifyHttpTransport.configure(builder, configuration, spotifyConnectionManager));
+    }
+
+    @Bean
+    public MeterBinder spotifyConnectionPoolMetrics(PoolingHttpClientConnectionManager spotifyConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(spotifyConnectionManager, "spotify");
+    }
+
     // this is only here to make testing the ret client easier
     @Bean
     public RestClientCustomizer restClientCustomizer() {
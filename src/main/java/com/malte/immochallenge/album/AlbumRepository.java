@@ -1,23 +1,29 @@
 package com.malte.immochallenge.album;
 
 import com.malte.immochallenge.album.model.Album;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface AlbumRepository extends CrudRepository<Album, Long> {
+    /**
+     * finds the albums whose search key contains the term, the most similar keys come first. the term has to be
+     * normalized like the keys. the trigram index on the search key is used even though the pattern starts with a wildcard
+     */
     @Query(value = """
-                SELECT *
-                FROM Album a
-                WHERE lower(a.name)
-                ILIKE lower(:term)
+            SELECT *
+            FROM album a
+            WHERE a.search_key LIKE '%' || :term || '%'
+            ORDER BY similarity(a.search_key, :term) DESC, a.id
+            LIMIT :limit
             """, nativeQuery = true)
-    List<Album> searchByName(@Param("term") String searchTerm);
+    List<Album> searchByName(@Param("term") String searchTerm, @Param("limit") int limit);
 
     @Query("""
             SELECT EXISTS (
@@ -28,16 +34,33 @@ public interface AlbumRepository extends CrudRepository<Album, Long> {
             """)
     boolean existsBySpotifyId(String spotifyId);
 
-    @Query("""
-            SELECT EXISTS (
-                SELECT 1
-                FROM Album a
-                WHERE a.spotifyId = ?1 AND lastModified IS NOT NULL
-            )
-            """)
-    boolean albumWasModified(String spotifyId);
+    @Query(value = """
+            SELECT *
+            FROM album a
+            WHERE a.spotify_id = ANY(:spotifyIds)
+            """, nativeQuery = true)
+    List<Album> findAllBySpotifyIds(@Param("spotifyIds") String[] spotifyIds);
 
-    Optional<Album> findBySpotifyId(String spotifyId);
+    /**
+     * takes a transaction level advisory lock on every spotify id, in a fixed order so that concurrent batches can
+     * not deadlock. a transaction that writes the same albums waits until the first one committed and then finds its rows
+     */
+    @Query(value = """
+            SELECT count(*)
+            FROM (
+                SELECT pg_advisory_xact_lock(hashtext('album'), ids.key)
+                FROM (SELECT DISTINCT hashtext(id) AS key FROM unnest(:spotifyIds) AS id ORDER BY key) ids
+            ) locked
+            """, nativeQuery = true)
+    long lockSpotifyIds(@Param("spotifyIds") String[] spotifyIds);
+
+    @Modifying
+    @Query(value = """
+            UPDATE album
+            SET last_synchronized = :synchronizationDate
+            WHERE spotify_id = ANY(:spotifyIds)
+            """, nativeQuery = true)
+    void markSynchronized(@Param("spotifyIds") String[] spotifyIds, @Param("synchronizationDate") LocalDateTime synchronizationDate);
 
     @Query(value = """
             SELECT DISTINCT a.* FROM album a
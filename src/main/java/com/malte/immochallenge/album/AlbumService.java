@@ -4,14 +4,27 @@ import com.malte.immochallenge.album.exceptions.AlbumAlreadyExistsException;
 import com.malte.immochallenge.album.exceptions.AlbumNotFoundException;
 import com.malte.immochallenge.album.exceptions.UpdateAlbumException;
 import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.model.ContentHash;
+import com.malte.immochallenge.model.SyncResult;
+import com.malte.immochallenge.search.AfterCommit;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.search.SearchConfiguration;
+import com.malte.immochallenge.search.SearchIndex;
+import com.malte.immochallenge.search.SearchInputSanitizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 
 @Slf4j
 @Service
@@ -19,6 +32,9 @@ import static java.util.Collections.emptyList;
 public class AlbumService {
 
     private final AlbumRepository albumRepository;
+    private final SearchConfiguration searchConfiguration;
+    private final SearchIndex searchIndex;
+    private final AutocompleteIndex autocompleteIndex;
 
 
     public Album getAlbumById(long id) {
@@ -26,93 +42,176 @@ public class AlbumService {
     }
 
     public List<Album> searchForAlbum(String searchTerm) {
-        var sanitizedInput = sanitizeSearchInput(searchTerm);
+        return searchForAlbum(searchTerm, searchConfiguration.getResultLimit());
+    }
+
+    /**
+     * the albums whose name contains the search term, the most similar names first
+     */
+    public List<Album> searchForAlbum(String searchTerm, int limit) {
+        var sanitizedInput = SearchInputSanitizer.sanitize(searchTerm);
         if (sanitizedInput == null) {
             return emptyList();
         }
-        return albumRepository.searchByName("%" + sanitizedInput + "%");
+        return albumRepository.searchByName(sanitizedInput, Math.max(1, limit));
     }
 
     public List<Album> getAlbumsByArtist(long artistId) {
         return albumRepository.getAlbumsByArtistId(artistId);
     }
 
-    public void handleNewAlbums(List<Album> albums, LocalDateTime synchronizationDate) {
-        for (Album album : albums) {
-            var spotifyId = album.getSpotifyId();
-            if (albumRepository.existsBySpotifyId(spotifyId)) {
-                // album exists
-                if (!albumRepository.albumWasModified(spotifyId)) {
-                    // album was never modified
-                    Album existingAlbum = albumRepository.findBySpotifyId(spotifyId)
-                            .orElseThrow(() -> new AlbumNotFoundException(spotifyId));
-                    album = existingAlbum.toBuilder()
-                            .lastSynchronized(synchronizationDate)
-                            .spotifyUri(album.getSpotifyUri())
-                            .name(album.getName())
-                            .albumType(album.getAlbumType())
-                            .totalTracks(album.getTotalTracks())
-                            .releaseDate(album.getReleaseDate())
-                            .releaseDatePrecision(album.getReleaseDatePrecision())
-                            .albumGroup(album.getAlbumGroup())
-                            .artists(album.getArtists())
-                            .restrictionReason(album.getRestrictionReason())
-                            .images(album.getImages())
-                            .href(album.getHref())
-                            .spotifyUri(album.getSpotifyUri())
-                            .externalUrl(album.getExternalUrl())
-                            .build();
-                    albumRepository.save(album);
-                } else {
-                    log.debug("album: {} was not updated because they were modified", album.getName());
-                }
+    /**
+     * persists a batch of albums from the api. all existing albums are loaded with a single query,
+     * new albums are inserted and changed ones are updated. albums whose data did not change since the last
+     * synchronization and manually modified albums are not rewritten, only their synchronization date is updated.
+     * the albums are locked first, so replicas that write the same albums at the same time do not both insert them
+     */
+    @Transactional
+    public SyncResult handleNewAlbums(List<Album> albums, LocalDateTime synchronizationDate) {
+        if (albums.isEmpty()) {
+            return SyncResult.empty();
+        }
+        // the same album can be returned for multiple artists
+        var albumsBySpotifyId = albums.stream()
+                .collect(toMap(Album::getSpotifyId, identity(), (first, second) -> first, LinkedHashMap::new));
+        var spotifyIds = albumsBySpotifyId.keySet().toArray(String[]::new);
+        albumRepository.lockSpotifyIds(spotifyIds);
+        var existingAlbums = albumRepository.findAllBySpotifyIds(spotifyIds).stream()
+                .collect(toMap(Album::getSpotifyId, identity(), (first, second) -> first));
+
+        List<Album> albumsToInsert = new ArrayList<>();
+        List<Album> albumsToUpdate = new ArrayList<>();
+        List<String> unchangedSpotifyIds = new ArrayList<>();
+        List<String> modifiedSpotifyIds = new ArrayList<>();
+        for (Album album : albumsBySpotifyId.values()) {
+            var contentHash = contentHashOf(album);
+            Album existingAlbum = existingAlbums.get(album.getSpotifyId());
+            if (existingAlbum == null) {
+                albumsToInsert.add(album.toBuilder()
+                        .lastSynchronized(synchronizationDate)
+                        .contentHash(contentHash)
+                        .build());
+            } else if (existingAlbum.getLastModified() != null) {
+                log.debug("album: {} was not updated because they were modified", album.getName());
+                modifiedSpotifyIds.add(album.getSpotifyId());
+            } else if (contentHash.equals(existingAlbum.getContentHash())) {
+                log.debug("album: {} was not updated because nothing changed", album.getName());
+                unchangedSpotifyIds.add(album.getSpotifyId());
             } else {
-                album = album.toBuilder().lastSynchronized(synchronizationDate).build();
-                albumRepository.save(album);
+                // album was never modified
+                albumsToUpdate.add(existingAlbum.toBuilder()
+                        .lastSynchronized(synchronizationDate)
+                        .spotifyUri(album.getSpotifyUri())
+                        .name(album.getName())
+                        .albumType(album.getAlbumType())
+                        .totalTracks(album.getTotalTracks())
+                        .releaseDate(album.getReleaseDate())
+                        .releaseDatePrecision(album.getReleaseDatePrecision())
+                        .albumGroup(album.getAlbumGroup())
+                        .artists(album.getArtists())
+                        .restrictionReason(album.getRestrictionReason())
+                        .images(album.getImages())
+                        .href(album.getHref())
+                        .spotifyUri(album.getSpotifyUri())
+                        .externalUrl(album.getExternalUrl())
+                        .contentHash(contentHash)
+                        .build());
             }
         }
+        if (!albumsToInsert.isEmpty()) {
+            var insertedAlbums = albumRepository.saveAll(albumsToInsert);
+            AfterCommit.run(() -> searchIndex.indexAlbums(insertedAlbums));
+        }
+        if (!albumsToUpdate.isEmpty()) {
+            var updatedAlbums = albumRepository.saveAll(albumsToUpdate);
+            AfterCommit.run(() -> searchIndex.indexAlbums(updatedAlbums));
+        }
+        var skippedSpotifyIds = Stream.concat(unchangedSpotifyIds.stream(), modifiedSpotifyIds.stream()).toArray(String[]::new);
+        if (skippedSpotifyIds.length > 0) {
+            // only touches the album row, so the images and artists are not rewritten
+            albumRepository.markSynchronized(skippedSpotifyIds, synchronizationDate);
+        }
+        return new SyncResult(
+                albumsToInsert.stream().map(Album::getSpotifyId).toList(),
+                albumsToUpdate.stream().map(Album::getSpotifyId).toList(),
+                unchangedSpotifyIds,
+                modifiedSpotifyIds);
     }
 
 
+    @Transactional
     public Album createNewAlbum(Album album) {
         album = album.toBuilder()
                 .id(null)
                 .lastModified(LocalDateTime.now())
                 .build();
+        // a synchronization inserting the same album waits for this transaction
+        albumRepository.lockSpotifyIds(new String[]{album.getSpotifyId()});
         if (!albumRepository.existsBySpotifyId(album.getSpotifyId())) {
-            return albumRepository.save(album);
+            var savedAlbum = albumRepository.save(album);
+            AfterCommit.run(() -> {
+                searchIndex.indexAlbum(savedAlbum);
+                autocompleteIndex.put(SearchIndex.Type.ALBUM, savedAlbum.getId(), savedAlbum.getName());
+            });
+            return savedAlbum;
         } else {
             throw new AlbumAlreadyExistsException(album.getSpotifyId());
         }
     }
 
+    @Transactional
     public Album updateAlbum(long id, Album newAlbum) {
         if (newAlbum.getId() != id) {
             throw new UpdateAlbumException("provided id does not match provided album");
         }
         if (albumRepository.existsById(id)) {
             var albumToSave = newAlbum.toBuilder().lastModified(LocalDateTime.now()).build();
-            return albumRepository.save(albumToSave);
+            var savedAlbum = albumRepository.save(albumToSave);
+            AfterCommit.run(() -> {
+                searchIndex.indexAlbum(savedAlbum);
+                autocompleteIndex.put(SearchIndex.Type.ALBUM, savedAlbum.getId(), savedAlbum.getName());
+            });
+            return savedAlbum;
         } else {
             throw new AlbumNotFoundException(id);
         }
     }
 
+    @Transactional
     public void deleteAlbum(long id) {
         if (albumRepository.existsById(id)) {
             albumRepository.deleteById(id);
+            AfterCommit.run(() -> {
+                searchIndex.remove(SearchIndex.Type.ALBUM, id);
+                autocompleteIndex.remove(SearchIndex.Type.ALBUM, id);
+            });
         } else {
             throw new AlbumNotFoundException(id);
         }
     }
 
 
-    private String sanitizeSearchInput(String searchTerm) {
-        if (searchTerm == null || searchTerm.isEmpty()) {
-            return null;
-        }
-        return searchTerm.toLowerCase().replaceAll("[^a-zA-Z0-9-\\s]", "");
+    static String contentHashOf(Album album) {
+        return ContentHash.create()
+                .add(album.getName())
+                .add(album.getAlbumType())
+                .add(album.getTotalTracks())
+                .add(album.getReleaseDate())
+                .add(album.getReleaseDatePrecision())
+                .add(album.getAlbumGroup())
+                .addEach(album.getArtists(), (hash, artist) -> hash
+                        .add(artist.getSpotifyId())
+                        .add(artist.getName())
+                        .add(artist.getType())
+                        .add(artist.getHref())
+                        .add(artist.getSpotifyUri())
+                        .add(artist.getExternalUrl()))
+                .add(album.getRestrictionReason())
+                .addImages(album.getImages())
+                .add(album.getHref())
+                .add(album.getSpotifyUri())
+                .add(album.getExternalUrl())
+                .toHex();
     }
 
-
 }
@@ -1,11 +1,15 @@
 package com.malte.immochallenge.album.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.malte.immochallenge.model.Image;
+import com.malte.immochallenge.model.SearchKeyNormalizer;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -48,4 +52,22 @@ public class Album {
     String href;
     String spotifyUri;
     String externalUrl;
+
+    /**
+     * fingerprint of the api data this album was last synchronized with
+     */
+    @JsonIgnore
+    String contentHash;
+
+    /**
+     * the name folded by the {@link SearchKeyNormalizer}, the album is searched by it
+     */
+    @JsonIgnore
+    String searchKey;
+
+    @PrePersist
+    @PreUpdate
+    void updateSearchKey() {
+        searchKey = SearchKeyNormalizer.normalize(name);
+    }
 }
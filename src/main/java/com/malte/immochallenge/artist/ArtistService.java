@@ -5,102 +5,185 @@ import com.malte.immochallenge.artist.exceptions.ArtistNotFoundException;
 import com.malte.immochallenge.artist.exceptions.UpdateArtistException;
 import com.malte.immochallenge.artist.model.Artist;
 import com.malte.immochallenge.artist.repository.ArtistRepository;
+import com.malte.immochallenge.model.ContentHash;
+import com.malte.immochallenge.model.SyncResult;
+import com.malte.immochallenge.search.AfterCommit;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.search.SearchConfiguration;
+import com.malte.immochallenge.search.SearchIndex;
+import com.malte.immochallenge.search.SearchInputSanitizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ArtistService {
     private final ArtistRepository artistRepository;
+    private final SearchConfiguration searchConfiguration;
+    private final SearchIndex searchIndex;
+    private final AutocompleteIndex autocompleteIndex;
 
     public Artist getArtistById(long id) {
         return artistRepository.findById(id).orElseThrow(() -> new ArtistNotFoundException(id));
     }
 
     public List<Artist> searchForArtist(String searchTerm) {
-        var sanitizedInput = sanitizeSearchInput(searchTerm);
+        return searchForArtist(searchTerm, searchConfiguration.getResultLimit());
+    }
+
+    /**
+     * the artists whose name contains the search term, the most similar names first
+     */
+    public List<Artist> searchForArtist(String searchTerm, int limit) {
+        var sanitizedInput = SearchInputSanitizer.sanitize(searchTerm);
         if (sanitizedInput == null) {
             return emptyList();
         }
-        return artistRepository.searchByName("%" + sanitizedInput + "%");
+        return artistRepository.searchByName(sanitizedInput, Math.max(1, limit));
     }
 
-    public void handleNewArtists(List<Artist> artists, LocalDateTime synchronizationDate) {
-        for (Artist artist : artists) {
-            var spotifyId = artist.getSpotifyId();
-            if (artistRepository.existsBySpotifyId(spotifyId)) {
-                // artist exists
-                if (!artistRepository.artistWasModified(spotifyId)) {
-                    // artist was never modified
-                    Artist existingArtist = artistRepository.findBySpotifyId(spotifyId)
-                            .orElseThrow(() -> new ArtistNotFoundException(spotifyId));
-                    artist = existingArtist.toBuilder()
-                            .lastSynchronized(synchronizationDate)
-                            .href(artist.getHref())
-                            .spotifyUri(artist.getSpotifyUri())
-                            .externalUrl(artist.getExternalUrl())
-                            .name(artist.getName())
-                            .followers(artist.getFollowers())
-                            .genres(artist.getGenres())
-                            .popularity(artist.getPopularity())
-                            .images(artist.getImages())
-                            .build();
-                    artistRepository.save(artist);
-                } else {
-                    log.debug("artist: {} was not updated because they were modified", artist.getName());
-                }
+    /**
+     * persists a batch of artists from the api. artists whose data did not change since the last
+     * synchronization and manually modified artists are not rewritten, only their synchronization date is updated.
+     * the artists are locked first, so replicas that write the same artists at the same time do not both insert them
+     */
+    @Transactional
+    public SyncResult handleNewArtists(List<Artist> artists, LocalDateTime synchronizationDate) {
+        if (artists.isEmpty()) {
+            return SyncResult.empty();
+        }
+        var artistsBySpotifyId = artists.stream()
+                .collect(toMap(Artist::getSpotifyId, identity(), (first, second) -> first, LinkedHashMap::new));
+        var spotifyIds = artistsBySpotifyId.keySet().toArray(String[]::new);
+        artistRepository.lockSpotifyIds(spotifyIds);
+        var existingArtists = artistRepository.findAllBySpotifyIds(spotifyIds).stream()
+                .collect(toMap(Artist::getSpotifyId, identity(), (first, second) -> first));
+
+        List<Artist> artistsToSave = new ArrayList<>();
+        List<String> insertedSpotifyIds = new ArrayList<>();
+        List<String> updatedSpotifyIds = new ArrayList<>();
+        List<String> unchangedSpotifyIds = new ArrayList<>();
+        List<String> modifiedSpotifyIds = new ArrayList<>();
+        for (Artist artist : artistsBySpotifyId.values()) {
+            var contentHash = contentHashOf(artist);
+            Artist existingArtist = existingArtists.get(artist.getSpotifyId());
+            if (existingArtist == null) {
+                artistsToSave.add(artist.toBuilder()
+                        .lastSynchronized(synchronizationDate)
+                        .contentHash(contentHash)
+                        .build());
+                insertedSpotifyIds.add(artist.getSpotifyId());
+            } else if (existingArtist.getLastModified() != null) {
+                log.debug("artist: {} was not updated because they were modified", artist.getName());
+                modifiedSpotifyIds.add(artist.getSpotifyId());
+            } else if (contentHash.equals(existingArtist.getContentHash())) {
+                log.debug("artist: {} was not updated because nothing changed", artist.getName());
+                unchangedSpotifyIds.add(artist.getSpotifyId());
             } else {
-                artist = artist.toBuilder().lastSynchronized(synchronizationDate).build();
-                artistRepository.save(artist);
+                // artist was never modified
+                artistsToSave.add(existingArtist.toBuilder()
+                        .lastSynchronized(synchronizationDate)
+                        .href(artist.getHref())
+                        .spotifyUri(artist.getSpotifyUri())
+                        .externalUrl(artist.getExternalUrl())
+                        .name(artist.getName())
+                        .followers(artist.getFollowers())
+                        .genres(artist.getGenres())
+                        .popularity(artist.getPopularity())
+                        .images(artist.getImages())
+                        .contentHash(contentHash)
+                        .build());
+                updatedSpotifyIds.add(artist.getSpotifyId());
             }
         }
+        if (!artistsToSave.isEmpty()) {
+            var savedArtists = artistRepository.saveAll(artistsToSave);
+            AfterCommit.run(() -> searchIndex.indexArtists(savedArtists));
+        }
+        var skippedSpotifyIds = Stream.concat(unchangedSpotifyIds.stream(), modifiedSpotifyIds.stream()).toArray(String[]::new);
+        if (skippedSpotifyIds.length > 0) {
+            // only touches the artist row, so the images are not rewritten
+            artistRepository.markSynchronized(skippedSpotifyIds, synchronizationDate);
+        }
+        return new SyncResult(insertedSpotifyIds, updatedSpotifyIds, unchangedSpotifyIds, modifiedSpotifyIds);
     }
 
+    @Transactional
     public Artist createNewArtist(Artist artist) {
         artist = artist.toBuilder()
                 .id(null)
                 .lastModified(LocalDateTime.now())
                 .build();
+        // a synchronization inserting the same artist waits for this transaction
+        artistRepository.lockSpotifyIds(new String[]{artist.getSpotifyId()});
         if (!artistRepository.existsBySpotifyId(artist.getSpotifyId())) {
-            return artistRepository.save(artist);
+            var savedArtist = artistRepository.save(artist);
+            AfterCommit.run(() -> {
+                searchIndex.indexArtist(savedArtist);
+                autocompleteIndex.put(SearchIndex.Type.ARTIST, savedArtist.getId(), savedArtist.getName());
+            });
+            return savedArtist;
         } else {
             throw new ArtistAlreadyExistsException(artist.getSpotifyId());
         }
     }
 
+    @Transactional
     public Artist updateArtist(long id, Artist newArtist) {
         if (newArtist.getId() != id) {
             throw new UpdateArtistException("provided id does not match provided artist");
         }
         if (artistRepository.existsById(id)) {
             var artistToSave = newArtist.toBuilder().lastModified(LocalDateTime.now()).build();
-            return artistRepository.save(artistToSave);
+            var savedArtist = artistRepository.save(artistToSave);
+            AfterCommit.run(() -> {
+                searchIndex.indexArtist(savedArtist);
+                autocompleteIndex.put(SearchIndex.Type.ARTIST, savedArtist.getId(), savedArtist.getName());
+            });
+            return savedArtist;
         } else {
             throw new ArtistNotFoundException(id);
         }
     }
 
+    @Transactional
     public void deleteArtist(long id) {
         if (artistRepository.existsById(id)) {
             artistRepository.deleteById(id);
+            AfterCommit.run(() -> {
+                searchIndex.remove(SearchIndex.Type.ARTIST, id);
+                autocompleteIndex.remove(SearchIndex.Type.ARTIST, id);
+            });
         } else {
             throw new ArtistNotFoundException(id);
         }
     }
 
 
-    private String sanitizeSearchInput(String searchTerm) {
-        if (searchTerm == null || searchTerm.isEmpty()) {
-            return null;
-        }
-        return searchTerm.toLowerCase().replaceAll("[^a-zA-Z0-9-\\s]", "");
+    static String contentHashOf(Artist artist) {
+        return ContentHash.create()
+                .add(artist.getName())
+                .add(artist.getFollowers())
+                .addAll(artist.getGenres())
+                .add(artist.getPopularity())
+                .addImages(artist.getImages())
+                .add(artist.getHref())
+                .add(artist.getSpotifyUri())
+                .add(artist.getExternalUrl())
+                .toHex();
     }
 
 }
@@ -1,7 +1,9 @@
 package com.malte.immochallenge.artist.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.malte.immochallenge.artist.repository.PostgresStringConverter;
 import com.malte.immochallenge.model.Image;
+import com.malte.immochallenge.model.SearchKeyNormalizer;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -44,5 +46,21 @@ public class Artist {
     String spotifyUri;
     String externalUrl;
 
+    /**
+     * fingerprint of the api data this artist was last synchronized with
+     */
+    @JsonIgnore
+    String contentHash;
+
+    /**
+     * the name folded by the {@link SearchKeyNormalizer}, the artist is searched by it
+     */
+    @JsonIgnore
+    String searchKey;
 
+    @PrePersist
+    @PreUpdate
+    void updateSearchKey() {
+        searchKey = SearchKeyNormalizer.normalize(name);
+    }
 }
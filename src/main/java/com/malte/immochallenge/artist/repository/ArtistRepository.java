@@ -1,22 +1,28 @@
 package com.malte.immochallenge.artist.repository;
 
 import com.malte.immochallenge.artist.model.Artist;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 public interface ArtistRepository extends CrudRepository<Artist, Long> {
 
+    /**
+     * finds the artists whose search key contains the term, the most similar keys come first. the term has to be
+     * normalized like the keys. the trigram index on the search key is used even though the pattern starts with a wildcard
+     */
     @Query(value = """
-                SELECT *
-                FROM Artist a
-                WHERE lower(a.name)
-                ILIKE lower(:term)
+            SELECT *
+            FROM artist a
+            WHERE a.search_key LIKE '%' || :term || '%'
+            ORDER BY similarity(a.search_key, :term) DESC, a.id
+            LIMIT :limit
             """, nativeQuery = true)
-    List<Artist> searchByName(@Param("term") String searchTerm);
+    List<Artist> searchByName(@Param("term") String searchTerm, @Param("limit") int limit);
 
     @Query("""
             SELECT EXISTS (
@@ -27,14 +33,31 @@ public interface ArtistRepository extends CrudRepository<Artist, Long> {
             """)
     boolean existsBySpotifyId(String spotifyId);
 
-    @Query("""
-            SELECT EXISTS (
-                SELECT 1
-                FROM Artist a
-                WHERE a.spotifyId = ?1 AND lastModified IS NOT NULL
-            )
-            """)
-    boolean artistWasModified(String spotifyId);
+    @Query(value = """
+            SELECT *
+            FROM artist a
+            WHERE a.spotify_id = ANY(:spotifyIds)
+            """, nativeQuery = true)
+    List<Artist> findAllBySpotifyIds(@Param("spotifyIds") String[] spotifyIds);
 
-    Optional<Artist> findBySpotifyId(String spotifyId);
-}
\ No newline at end of file
+    /**
+     * takes a transaction level advisory lock on every spotify id, in a fixed order so that concurrent batches can
+     * not deadlock. a transaction that writes the same artists waits until the first one committed and then finds its rows
+     */
+    @Query(value = """
+            SELECT count(*)
+            FROM (
+                SELECT pg_advisory_xact_lock(hashtext('artist'), ids.key)
+                FROM (SELECT DISTINCT hashtext(id) AS key FROM unnest(:spotifyIds) AS id ORDER BY key) ids
+            ) locked
+            """, nativeQuery = true)
+    long lockSpotifyIds(@Param("spotifyIds") String[] spotifyIds);
+
+    @Modifying
+    @Query(value = """
+            UPDATE artist
+            SET last_synchronized = :synchronizationDate
+            WHERE spotify_id = ANY(:spotifyIds)
+            """, nativeQuery = true)
+    void markSynchronized(@Param("spotifyIds") String[] spotifyIds, @Param("synchronizationDate") LocalDateTime synchronizationDate);
+}
@@ -0,0 +1,223 @@
+package com.malte.immochallenge.mapper;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.album.model.SimplifiedArtist;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.model.Image;
+import com.malte.immochallenge.spotify.response.SpotifyPage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * reads api responses token by token straight into entities, without building the spotify model classes
+ * first. fields that are not mapped, like the available markets of an album, are skipped without being
+ * materialized. produces the same entities as {@link SpotifyApiMapper}
+ */
+public class SpotifyStreamingMapper {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * reads a page of the albums endpoint
+     */
+    public static SpotifyPage<Album> readAlbumPage(byte[] body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            parser.nextToken();
+            List<Album> albums = new ArrayList<>();
+            var page = new PageFields();
+            readObject(parser, field -> {
+                switch (field) {
+                    case "next" -> page.next = parser.getValueAsString();
+                    case "items" -> readArray(parser, () -> albums.add(readAlbum(parser)));
+                    default -> parser.skipChildren();
+                }
+            });
+            return new SpotifyPage<>(albums, page.next);
+        }
+    }
+
+    /**
+     * reads the response of the several artists endpoint. ids the api does not know are returned as null
+     * by the api and skipped
+     */
+    public static SpotifyPage<Artist> readArtists(byte[] body) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(body)) {
+            parser.nextToken();
+            var page = new PageFields();
+            readObject(parser, field -> {
+                if (field.equals("artists")) {
+                    page.artists = new ArrayList<>();
+                    readArray(parser, () -> page.artists.add(readArtist(parser)));
+                } else {
+                    parser.skipChildren();
+                }
+            });
+            return new SpotifyPage<>(page.artists, null);
+        }
+    }
+
+    private static Album readAlbum(JsonParser parser) throws IOException {
+        var album = Album.builder();
+        List<SimplifiedArtist> artists = new ArrayList<>();
+        List<Image> images = new ArrayList<>();
+        readObject(parser, field -> {
+            switch (field) {
+                case "id" -> album.spotifyId(parser.getValueAsString());
+                case "uri" -> album.spotifyUri(parser.getValueAsString());
+                case "name" -> album.name(parser.getValueAsString());
+                case "album_type" -> album.albumType(parser.getValueAsString());
+                case "total_tracks" -> album.totalTracks(parser.getValueAsInt());
+                case "release_date" -> album.releaseDate(parser.getValueAsString());
+                case "release_date_precision" -> album.releaseDatePrecision(parser.getValueAsString());
+                case "album_group" -> album.albumGroup(parser.getValueAsString());
+                case "artists" -> readArray(parser, () -> artists.add(readSimplifiedArtist(parser)));
+                case "restrictions" -> readObject(parser, restrictionField -> {
+                    if (restrictionField.equals("reason")) {
+                        album.restrictionReason(parser.getValueAsString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "images" -> readArray(parser, () -> images.add(readImage(parser)));
+                case "href" -> album.href(parser.getValueAsString());
+                case "external_urls" -> album.externalUrl(readSpotifyUrl(parser));
+                default -> parser.skipChildren();
+            }
+        });
+        return album.artists(artists).images(images).build();
+    }
+
+    private static SimplifiedArtist readSimplifiedArtist(JsonParser parser) throws IOException {
+        var artist = SimplifiedArtist.builder();
+        readObject(parser, field -> {
+            switch (field) {
+                case "id" -> artist.spotifyId(parser.getValueAsString());
+                case "name" -> artist.name(parser.getValueAsString());
+                case "type" -> artist.type(parser.getValueAsString());
+                case "href" -> artist.href(parser.getValueAsString());
+                case "uri" -> artist.spotifyUri(parser.getValueAsString());
+                case "external_urls" -> artist.externalUrl(readSpotifyUrl(parser));
+                default -> parser.skipChildren();
+            }
+        });
+        return artist.build();
+    }
+
+    private static Artist readArtist(JsonParser parser) throws IOException {
+        var artist = Artist.builder();
+        List<String> genres = new ArrayList<>();
+        List<Image> images = new ArrayList<>();
+        readObject(parser, field -> {
+            switch (field) {
+                case "id" -> artist.spotifyId(parser.getValueAsString());
+                case "href" -> artist.href(parser.getValueAsString());
+                case "uri" -> artist.spotifyUri(parser.getValueAsString());
+                case "name" -> artist.name(parser.getValueAsString());
+                case "popularity" -> artist.popularity(parser.getValueAsInt());
+                case "external_urls" -> artist.externalUrl(readSpotifyUrl(parser));
+                case "followers" -> readObject(parser, followersField -> {
+                    if (followersField.equals("total")) {
+                        artist.followers(parser.getValueAsLong());
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "genres" -> readArray(parser, () -> genres.add(parser.getValueAsString()));
+                case "images" -> readArray(parser, () -> images.add(readImage(parser)));
+                default -> parser.skipChildren();
+            }
+        });
+        return artist.genres(genres).images(images).build();
+    }
+
+    private static Image readImage(JsonParser parser) throws IOException {
+        var image = Image.builder();
+        readObject(parser, field -> {
+            switch (field) {
+                case "url" -> image.url(parser.getValueAsString());
+                case "height" -> image.height(readInteger(parser));
+                case "width" -> image.width(readInteger(parser));
+                default -> parser.skipChildren();
+            }
+        });
+        return image.build();
+    }
+
+    private static String readSpotifyUrl(JsonParser parser) throws IOException {
+        var url = new String[1];
+        readObject(parser, field -> {
+            if (field.equals("spotify")) {
+                url[0] = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        });
+        return url[0];
+    }
+
+    private static Integer readInteger(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsInt();
+    }
+
+    /**
+     * calls the reader for every field of the object the parser is at, with the parser on the value of the field.
+     * the reader has to consume the whole value. null is read as an object without fields
+     */
+    private static void readObject(JsonParser parser, FieldReader reader) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "expected an object but got " + parser.currentToken());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            reader.read(field);
+        }
+    }
+
+    /**
+     * calls the reader for every element of the array the parser is at. null elements and null arrays are skipped
+     */
+    private static void readArray(JsonParser parser, ElementReader reader) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "expected an array but got " + parser.currentToken());
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "unexpected end of the array");
+            }
+            if (token != JsonToken.VALUE_NULL) {
+                reader.read();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldReader {
+        void read(String field) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ElementReader {
+        void read() throws IOException;
+    }
+
+    /**
+     * the fields of a response that are set from within a lambda
+     */
+    private static class PageFields {
+        String next;
+        List<Artist> artists;
+    }
+}
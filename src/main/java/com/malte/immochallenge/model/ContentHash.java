@@ -0,0 +1,70 @@
+package com.malte.immochallenge.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * builds a stable sha-256 fingerprint over a sequence of values.
+ * used to detect if the data of an entity changed between two synchronizations
+ */
+public class ContentHash {
+    private static final byte SEPARATOR = 0x1F;
+    private static final byte NULL_VALUE = 0x00;
+
+    private final MessageDigest digest;
+
+    private ContentHash(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    public static ContentHash create() {
+        try {
+            return new ContentHash(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    public ContentHash add(Object value) {
+        if (value == null) {
+            digest.update(NULL_VALUE);
+        } else {
+            digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(SEPARATOR);
+        return this;
+    }
+
+    public ContentHash addAll(List<?> values) {
+        if (values == null) {
+            return add(null);
+        }
+        add(values.size());
+        values.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * adds every element of the list, the fields of an element are added by the given function
+     */
+    public <T> ContentHash addEach(List<T> values, BiConsumer<ContentHash, T> addFields) {
+        if (values == null) {
+            return add(null);
+        }
+        add(values.size());
+        values.forEach(value -> addFields.accept(this, value));
+        return this;
+    }
+
+    public ContentHash addImages(List<Image> images) {
+        return addEach(images, (hash, image) -> hash.add(image.getUrl()).add(image.getHeight()).add(image.getWidth()));
+    }
+
+    public String toHex() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
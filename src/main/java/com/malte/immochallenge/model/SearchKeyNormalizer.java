@@ -0,0 +1,58 @@
+package com.malte.immochallenge.model;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * folds a name into the key it is searched by: lower case, without accents, without apostrophes and with every
+ * other run of punctuation and whitespace as a single space, so "Beyoncé" is found by "beyonce" and "AC/DC" by "ac dc".
+ * names are folded once when they are written, search terms the same way when they are searched
+ */
+public class SearchKeyNormalizer {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern APOSTROPHES = Pattern.compile("['’‘`´]");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        var decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFKD);
+        var folded = foldLetters(MARKS.matcher(decomposed).replaceAll(""));
+        var withoutApostrophes = APOSTROPHES.matcher(folded).replaceAll("");
+        return SEPARATORS.matcher(withoutApostrophes).replaceAll(" ").strip();
+    }
+
+    /**
+     * replaces the letters that the decomposition does not split into a latin letter and an accent
+     */
+    private static String foldLetters(String text) {
+        StringBuilder folded = null;
+        for (int i = 0; i < text.length(); i++) {
+            var letter = text.charAt(i);
+            var replacement = switch (letter) {
+                case 'ß' -> "ss";
+                case 'æ' -> "ae";
+                case 'œ' -> "oe";
+                case 'ø' -> "o";
+                case 'ł' -> "l";
+                case 'đ', 'ð' -> "d";
+                case 'þ' -> "th";
+                case 'ı' -> "i";
+                default -> null;
+            };
+            if (replacement != null && folded == null) {
+                folded = new StringBuilder(text.length() + 4).append(text, 0, i);
+            }
+            if (folded != null) {
+                if (replacement != null) {
+                    folded.append(replacement);
+                } else {
+                    folded.append(letter);
+                }
+            }
+        }
+        return folded == null ? text : folded.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.malte.immochallenge.model;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * the outcome of persisting a batch of synchronized entities, grouped by the spotify ids of the entities
+ *
+ * @param insertedSpotifyIds  entities that did not exist before
+ * @param updatedSpotifyIds   entities whose api data changed since the last synchronization
+ * @param unchangedSpotifyIds entities whose api data did not change since the last synchronization
+ * @param modifiedSpotifyIds  entities that were not updated because they were manually modified
+ */
+public record SyncResult(List<String> insertedSpotifyIds,
+                         List<String> updatedSpotifyIds,
+                         List<String> unchangedSpotifyIds,
+                         List<String> modifiedSpotifyIds) {
+
+    public static SyncResult empty() {
+        return new SyncResult(List.of(), List.of(), List.of(), List.of());
+    }
+
+    /**
+     * the entities that were inserted or updated
+     */
+    public List<String> changedSpotifyIds() {
+        return Stream.concat(insertedSpotifyIds.stream(), updatedSpotifyIds.stream()).toList();
+    }
+
+    public boolean hasChanges() {
+        return !insertedSpotifyIds.isEmpty() || !updatedSpotifyIds.isEmpty();
+    }
+}
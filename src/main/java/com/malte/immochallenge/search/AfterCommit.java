@@ -0,0 +1,30 @@
+package com.malte.immochallenge.search;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * runs updates of the in memory and lucene indexes once the database changes they mirror are committed.
+ * a rolled back transaction leaves the indexes untouched
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * runs the update after the commit of the current transaction, right away if there is none
+     */
+    public static void run(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+}
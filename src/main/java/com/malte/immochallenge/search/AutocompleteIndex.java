@@ -0,0 +1,169 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.model.SearchKeyNormalizer;
+import com.malte.immochallenge.search.SearchIndex.Type;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * answers autocomplete requests from memory. the search keys of the artists and albums are held in a {@link PrefixIndex}
+ * that is built from the database on startup, after every synchronization of this instance that changed something
+ * and on a schedule, so the changes of other instances are found as well. manual changes are kept next to it until
+ * the next rebuild, so they are found right away
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AutocompleteIndex implements MeterBinder {
+    private static final int REBUILD_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchConfiguration searchConfiguration;
+
+    private volatile PrefixIndex snapshot = PrefixIndex.of(List.of());
+    // manual changes by the reference of their entry, a patch without suggestion removes the entry
+    private final Map<Long, Patch> patches = new ConcurrentHashMap<>();
+    private final AtomicLong patchVersions = new AtomicLong();
+
+    private record Patch(String key, AutocompleteSuggestion suggestion, long version) {
+    }
+
+    /**
+     * the artists and albums whose search key starts with the folded prefix. they are in the alphabetical order
+     * of their keys, so a name comes before the longer names it is the beginning of
+     */
+    public List<AutocompleteSuggestion> complete(String prefix) {
+        var key = SearchKeyNormalizer.normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        var limit = Math.max(1, searchConfiguration.getAutocompleteLimit());
+        var suggestions = snapshot.find(key, limit, ref -> !patches.containsKey(ref));
+        if (patches.isEmpty()) {
+            return suggestions;
+        }
+        List<Patch> merged = new ArrayList<>();
+        suggestions.forEach(suggestion -> merged.add(new Patch(SearchKeyNormalizer.normalize(suggestion.name()), suggestion, 0)));
+        patches.values().stream()
+                .filter(patch -> patch.suggestion() != null && patch.key().startsWith(key))
+                .forEach(merged::add);
+        return merged.stream()
+                .sorted(Comparator.comparing(Patch::key))
+                .limit(limit)
+                .map(Patch::suggestion)
+                .toList();
+    }
+
+    /**
+     * adds or renames an artist or album until the next rebuild
+     */
+    public void put(Type type, Long id, String name) {
+        if (id == null) {
+            return;
+        }
+        var key = SearchKeyNormalizer.normalize(name);
+        if (key.isEmpty()) {
+            remove(type, id);
+            return;
+        }
+        patches.put(PrefixIndex.refOf(type, id),
+                new Patch(key, new AutocompleteSuggestion(id, name, type), patchVersions.incrementAndGet()));
+    }
+
+    /**
+     * hides an artist or album until the next rebuild
+     */
+    public void remove(Type type, long id) {
+        patches.put(PrefixIndex.refOf(type, id), new Patch(null, null, patchVersions.incrementAndGet()));
+    }
+
+    /**
+     * reads all names and search keys from the database and replaces the index. the rows are streamed, only the
+     * names are held in memory while the index is built
+     */
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${search.autocomplete-rebuild-interval:PT5M}",
+            fixedDelayString = "${search.autocomplete-rebuild-interval:PT5M}")
+    public synchronized void rebuild() {
+        var started = System.nanoTime();
+        // every change patched up to here was committed before the names are read
+        var version = patchVersions.get();
+        List<PrefixIndex.Entry> entries = new ArrayList<>();
+        var streamingJdbcTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        streamingJdbcTemplate.setFetchSize(REBUILD_FETCH_SIZE);
+        streamingJdbcTemplate.query("SELECT id, name, search_key FROM artist", resultSet -> {
+            addEntry(entries, Type.ARTIST, resultSet.getLong("id"), resultSet.getString("name"), resultSet.getString("search_key"));
+        });
+        streamingJdbcTemplate.query("SELECT id, name, search_key FROM album", resultSet -> {
+            addEntry(entries, Type.ALBUM, resultSet.getLong("id"), resultSet.getString("name"), resultSet.getString("search_key"));
+        });
+        replace(entries, version);
+        log.info("built the autocomplete index with {} names in {} ms, it takes {} KB", size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), memoryBytes() / 1024);
+    }
+
+    /**
+     * the number of names in the index, without the manual changes since the last rebuild
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * the memory taken by the names in the index
+     */
+    public long memoryBytes() {
+        return snapshot.memoryBytes();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("search.autocomplete.names", this, AutocompleteIndex::size)
+                .description("the number of names in the autocomplete index")
+                .register(registry);
+        Gauge.builder("search.autocomplete.memory", this, AutocompleteIndex::memoryBytes)
+                .description("the memory taken by the autocomplete index")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * replaces the index, the manual changes up to the version are contained in the entries
+     */
+    void replace(Collection<PrefixIndex.Entry> entries, long version) {
+        snapshot = PrefixIndex.of(entries);
+        patches.values().removeIf(patch -> patch.version() <= version);
+    }
+
+    long currentVersion() {
+        return patchVersions.get();
+    }
+
+    private static void addEntry(List<PrefixIndex.Entry> entries, Type type, long id, String name, String searchKey) {
+        // the key is written with the name, rows written by other means are folded here
+        var key = searchKey != null ? searchKey : SearchKeyNormalizer.normalize(name);
+        if (!key.isEmpty() && name != null) {
+            entries.add(new PrefixIndex.Entry(key, type, id, name));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.malte.immochallenge.search;
+
+/**
+ * an artist or album whose name starts with the typed text, only what is needed to show it in a dropdown
+ */
+public record AutocompleteSuggestion(long id, String name, SearchIndex.Type type) {
+}
@@ -0,0 +1,16 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.artist.model.Artist;
+
+import java.util.List;
+
+/**
+ * the matching artists and albums, the best match comes first
+ */
+public record FullTextSearchResult(List<Artist> artists, List<Album> albums) {
+
+    public static FullTextSearchResult empty() {
+        return new FullTextSearchResult(List.of(), List.of());
+    }
+}
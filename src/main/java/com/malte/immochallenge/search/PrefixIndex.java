@@ -0,0 +1,215 @@
+package com.malte.immochallenge.search;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * an immutable, sorted list of normalized names that is searched by prefix. the names are front coded in blocks of
+ * {@link #BLOCK_SIZE}: the first name of a block is stored in full, every other name as the length of the prefix it
+ * shares with the name before it followed by the rest. a search finds the block by binary search over the first
+ * names and reads forward from there. the ids, types and display names are kept in flat arrays next to it, so
+ * there is not a single object per name
+ */
+final class PrefixIndex {
+    static final int BLOCK_SIZE = 16;
+    // every array has an object header
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final Comparator<Encoded> ORDER = (first, second) -> {
+        var order = Arrays.compareUnsigned(first.key(), second.key());
+        return order != 0 ? order : Long.compare(first.ref(), second.ref());
+    };
+
+    private final int size;
+    private final int maxKeyLength;
+    private final byte[] keys;
+    private final int[] blockOffsets;
+    // the id shifted by one bit, the lowest bit is the type
+    private final long[] refs;
+    private final byte[] names;
+    private final int[] nameOffsets;
+
+    /**
+     * a name to be indexed, the key is the normalized name it is found by
+     */
+    record Entry(String key, SearchIndex.Type type, long id, String name) {
+    }
+
+    private record Encoded(byte[] key, long ref, String name) {
+    }
+
+    private PrefixIndex(int size, int maxKeyLength, byte[] keys, int[] blockOffsets, long[] refs, byte[] names, int[] nameOffsets) {
+        this.size = size;
+        this.maxKeyLength = maxKeyLength;
+        this.keys = keys;
+        this.blockOffsets = blockOffsets;
+        this.refs = refs;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+    }
+
+    static PrefixIndex of(Collection<Entry> entries) {
+        var sorted = entries.stream()
+                .map(entry -> new Encoded(entry.key().getBytes(UTF_8), refOf(entry.type(), entry.id()), entry.name()))
+                .sorted(ORDER)
+                .toArray(Encoded[]::new);
+        var size = sorted.length;
+        var keys = new ByteArrayOutputStream();
+        var names = new ByteArrayOutputStream();
+        var blockOffsets = new int[Math.ceilDiv(size, BLOCK_SIZE)];
+        var refs = new long[size];
+        var nameOffsets = new int[size + 1];
+        var maxKeyLength = 0;
+        byte[] previousKey = null;
+        for (int i = 0; i < size; i++) {
+            var key = sorted[i].key();
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = keys.size();
+                writeVarInt(keys, key.length);
+                keys.write(key, 0, key.length);
+            } else {
+                var shared = sharedPrefixLength(previousKey, key);
+                writeVarInt(keys, shared);
+                writeVarInt(keys, key.length - shared);
+                keys.write(key, shared, key.length - shared);
+            }
+            previousKey = key;
+            maxKeyLength = Math.max(maxKeyLength, key.length);
+            refs[i] = sorted[i].ref();
+            nameOffsets[i] = names.size();
+            names.writeBytes(sorted[i].name().getBytes(UTF_8));
+        }
+        nameOffsets[size] = names.size();
+        return new PrefixIndex(size, maxKeyLength, keys.toByteArray(), blockOffsets, refs, names.toByteArray(), nameOffsets);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * the bytes held by the arrays of the index
+     */
+    long memoryBytes() {
+        return ARRAY_HEADER_BYTES * 5L + keys.length + blockOffsets.length * 4L + refs.length * 8L
+                + names.length + nameOffsets.length * 4L;
+    }
+
+    /**
+     * the entries whose key starts with the prefix in the order of their keys, entries whose reference is not
+     * accepted are skipped and do not count towards the limit
+     */
+    List<AutocompleteSuggestion> find(String prefixKey, int limit, LongPredicate accepted) {
+        List<AutocompleteSuggestion> found = new ArrayList<>();
+        if (size == 0 || limit <= 0) {
+            return found;
+        }
+        var prefix = prefixKey.getBytes(UTF_8);
+        var reader = new KeyReader();
+        for (int index = firstBlockFor(prefix) * BLOCK_SIZE; index < size && found.size() < limit; index++) {
+            reader.read(index);
+            if (reader.startsWith(prefix)) {
+                if (accepted.test(refs[index])) {
+                    found.add(suggestionAt(index));
+                }
+            } else if (reader.compareTo(prefix) > 0) {
+                // the keys are sorted, no later key can start with the prefix
+                break;
+            }
+        }
+        return found;
+    }
+
+    static long refOf(SearchIndex.Type type, long id) {
+        return id << 1 | type.ordinal();
+    }
+
+    private AutocompleteSuggestion suggestionAt(int index) {
+        var ref = refs[index];
+        var name = new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index], UTF_8);
+        return new AutocompleteSuggestion(ref >>> 1, name, SearchIndex.Type.values()[(int) (ref & 1)]);
+    }
+
+    /**
+     * the last block whose first key is smaller than the prefix, matches can not start before it
+     */
+    private int firstBlockFor(byte[] prefix) {
+        var low = 0;
+        var high = blockOffsets.length - 1;
+        var block = 0;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var position = new int[]{blockOffsets[middle]};
+            var length = readVarInt(keys, position);
+            if (Arrays.compareUnsigned(keys, position[0], position[0] + length, prefix, 0, prefix.length) < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return block;
+    }
+
+    private static int sharedPrefixLength(byte[] first, byte[] second) {
+        var mismatch = Arrays.mismatch(first, second);
+        return mismatch < 0 ? first.length : mismatch;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        var value = 0;
+        for (int shift = 0; ; shift += 7) {
+            var current = bytes[position[0]++];
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * decodes the keys one after the other, starting at the first key of a block
+     */
+    private class KeyReader {
+        private final byte[] key = new byte[maxKeyLength];
+        private final int[] position = new int[1];
+        private int length;
+
+        void read(int index) {
+            if (index % BLOCK_SIZE == 0) {
+                position[0] = blockOffsets[index / BLOCK_SIZE];
+                length = readVarInt(keys, position);
+                System.arraycopy(keys, position[0], key, 0, length);
+                position[0] += length;
+            } else {
+                var shared = readVarInt(keys, position);
+                var suffix = readVarInt(keys, position);
+                System.arraycopy(keys, position[0], key, shared, suffix);
+                position[0] += suffix;
+                length = shared + suffix;
+            }
+        }
+
+        boolean startsWith(byte[] prefix) {
+            return length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+        }
+
+        int compareTo(byte[] other) {
+            return Arrays.compareUnsigned(key, 0, length, other, 0, other.length);
+        }
+    }
+}
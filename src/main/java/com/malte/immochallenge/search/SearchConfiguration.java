@@ -0,0 +1,51 @@
+package com.malte.immochallenge.search;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "search")
+@Data
+public class SearchConfiguration {
+
+    /**
+     * the maximum number of artists or albums returned by a search, the best matches come first
+     */
+    int resultLimit = 50;
+    /**
+     * the maximum number of names returned by the autocompletion
+     */
+    int autocompleteLimit = 10;
+    /**
+     * how often the autocompletion is built again from the database, it catches up with the changes of other instances
+     */
+    Duration autocompleteRebuildInterval = Duration.ofMinutes(5);
+    /**
+     * the maximum number of artists in the combined search of artists and albums
+     */
+    int artistLimit = 10;
+    /**
+     * the maximum number of albums in the combined search of artists and albums
+     */
+    int albumLimit = 20;
+
+    /**
+     * where the full text index is stored, no directory disables the full text search
+     */
+    String indexDirectory;
+    /**
+     * how long it takes at most until a change is found by the full text search
+     */
+    Duration indexRefreshInterval = Duration.ofSeconds(1);
+    /**
+     * how often the changes of the full text index are written to disk
+     */
+    Duration indexCommitInterval = Duration.ofMinutes(1);
+    /**
+     * how often the full text index is reconciled with the database, it catches up with the changes of other instances
+     */
+    Duration indexReconcileInterval = Duration.ofMinutes(15);
+}
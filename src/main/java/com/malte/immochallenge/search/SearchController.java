@@ -0,0 +1,34 @@
+package com.malte.immochallenge.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("search")
+@RequiredArgsConstructor
+public class SearchController {
+    private final SearchService searchService;
+    private final AutocompleteIndex autocompleteIndex;
+
+    @GetMapping
+    public ResponseEntity<SearchResult> search(@RequestParam("q") String query) {
+        return ResponseEntity.ok(searchService.search(query));
+    }
+
+    @GetMapping("fulltext/{searchTerm}")
+    public ResponseEntity<FullTextSearchResult> searchFullText(@PathVariable String searchTerm) {
+        return ResponseEntity.ok(searchService.searchFullText(searchTerm));
+    }
+
+    @GetMapping("autocomplete/{prefix}")
+    public ResponseEntity<List<AutocompleteSuggestion>> autocomplete(@PathVariable String prefix) {
+        return ResponseEntity.ok(autocompleteIndex.complete(prefix));
+    }
+}
@@ -0,0 +1,51 @@
+package com.malte.immochallenge.search;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.model.SearchKeyNormalizer;
+
+/**
+ * an artist or an album found by the search. the score orders the hits of both types, a higher score is a better match
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SearchHit(SearchIndex.Type type, long id, String name, double score, Artist artist, Album album) {
+
+    static SearchHit of(String searchTerm, Artist artist) {
+        return new SearchHit(SearchIndex.Type.ARTIST, artist.getId(), artist.getName(),
+                scoreOf(searchTerm, searchKeyOf(artist.getSearchKey(), artist.getName())), artist, null);
+    }
+
+    static SearchHit of(String searchTerm, Album album) {
+        return new SearchHit(SearchIndex.Type.ALBUM, album.getId(), album.getName(),
+                scoreOf(searchTerm, searchKeyOf(album.getSearchKey(), album.getName())), null, album);
+    }
+
+    /**
+     * a key equal to the term scores highest, then keys starting with it, then keys with a word starting with it.
+     * within each of these, the less a key has besides the term, the higher it scores
+     */
+    static double scoreOf(String searchTerm, String searchKey) {
+        if (searchKey == null || searchKey.isEmpty()) {
+            return 0;
+        }
+        double score;
+        if (searchKey.equals(searchTerm)) {
+            score = 3;
+        } else if (searchKey.startsWith(searchTerm)) {
+            score = 2;
+        } else if (searchKey.contains(" " + searchTerm)) {
+            score = 1;
+        } else {
+            score = 0;
+        }
+        return score + (double) Math.min(searchTerm.length(), searchKey.length()) / searchKey.length();
+    }
+
+    /**
+     * entities that were not written since the key was introduced are folded here
+     */
+    private static String searchKeyOf(String searchKey, String name) {
+        return searchKey != null ? searchKey : SearchKeyNormalizer.normalize(name);
+    }
+}
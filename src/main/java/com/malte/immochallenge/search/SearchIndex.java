@@ -0,0 +1,348 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.album.model.SimplifiedArtist;
+import com.malte.immochallenge.artist.model.Artist;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.MMapDirectory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * a lucene index of the artists and albums next to postgres, stored in a memory mapped directory on local disk.
+ * artists are found by name and genre, albums by name and by the names of their artists, the matches are ranked
+ * by relevance. changes are visible to searches after the next refresh and written to disk on every commit.
+ * the index only holds what is needed to find a match, the entities are loaded from postgres by id.
+ * the index of every instance is reconciled with postgres on a schedule, see {@link SearchService#reconcileIndex()}.
+ * without {@link SearchConfiguration#getIndexDirectory()} the index is disabled and finds nothing
+ */
+@Slf4j
+@Component
+public class SearchIndex {
+    static final String KEY = "key";
+    static final String TYPE = "type";
+    static final String ID = "id";
+    static final String NAME = "name";
+    static final String GENRES = "genres";
+    static final String ARTISTS = "artists";
+
+    public enum Type {
+        ARTIST,
+        ALBUM
+    }
+
+    private final Analyzer analyzer = new FoldingAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    public SearchIndex(SearchConfiguration configuration) {
+        var directory = configuration.getIndexDirectory();
+        if (directory == null || directory.isBlank()) {
+            writer = null;
+            searcherManager = null;
+            return;
+        }
+        try {
+            writer = new IndexWriter(new MMapDirectory(Path.of(directory)), new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+            searcherManager = new SearcherManager(writer, null);
+        } catch (IOException exception) {
+            throw new UncheckedIOException("could not open the search index in " + directory, exception);
+        }
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * the number of artists and albums in the index, including changes that are not visible yet
+     */
+    public int size() {
+        return isEnabled() ? writer.getDocStats().numDocs : 0;
+    }
+
+    /**
+     * adds the artists or replaces them if they are already in the index
+     */
+    public void indexArtists(Iterable<Artist> artists) {
+        List<Document> documents = new ArrayList<>();
+        for (Artist artist : artists) {
+            if (artist != null && artist.getId() != null) {
+                documents.add(document(Type.ARTIST, artist.getId(), artist.getName(), joined(artist.getGenres()), null));
+            }
+        }
+        update(documents);
+    }
+
+    public void indexArtist(Artist artist) {
+        indexArtists(Collections.singletonList(artist));
+    }
+
+    /**
+     * adds the albums or replaces them if they are already in the index
+     */
+    public void indexAlbums(Iterable<Album> albums) {
+        List<Document> documents = new ArrayList<>();
+        for (Album album : albums) {
+            if (album != null && album.getId() != null) {
+                documents.add(document(Type.ALBUM, album.getId(), album.getName(), null, artistNamesOf(album)));
+            }
+        }
+        update(documents);
+    }
+
+    public void indexAlbum(Album album) {
+        indexAlbums(Collections.singletonList(album));
+    }
+
+    /**
+     * adds or replaces a single entry without loading its entity, used to build the index from the database
+     */
+    public void index(Type type, long id, String name, String genres, String artists) {
+        update(List.of(document(type, id, name, genres, artists)));
+    }
+
+    public void remove(Type type, long id) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            writer.deleteDocuments(new Term(KEY, keyOf(type, id)));
+        } catch (IOException exception) {
+            log.error("could not remove {} {} from the search index: {}", type, id, exception.getMessage());
+        }
+    }
+
+    /**
+     * the ids of all artists or albums in the index, including changes that are not visible yet
+     */
+    public Set<Long> ids(Type type) {
+        if (!isEnabled()) {
+            return Set.of();
+        }
+        var prefix = type.name() + ":";
+        Set<Long> ids = new HashSet<>();
+        try (var reader = DirectoryReader.open(writer)) {
+            for (var leaf : reader.leaves()) {
+                var leafReader = leaf.reader();
+                var liveDocs = leafReader.getLiveDocs();
+                var storedFields = leafReader.storedFields();
+                for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    var key = storedFields.document(doc, Set.of(KEY)).get(KEY);
+                    if (key.startsWith(prefix)) {
+                        ids.add(Long.parseLong(key.substring(prefix.length())));
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException("could not read the search index", exception);
+        }
+        return ids;
+    }
+
+    /**
+     * finds the ids of the best matching artists or albums, the best match comes first.
+     * every word of the text has to match, the last word also matches as a prefix
+     */
+    public List<Long> search(Type type, String text, int limit) {
+        if (!isEnabled() || text == null) {
+            return List.of();
+        }
+        var query = queryFor(type, text);
+        if (query == null) {
+            return List.of();
+        }
+        try {
+            var searcher = searcherManager.acquire();
+            try {
+                var topDocs = searcher.search(query, Math.max(1, limit));
+                var storedFields = searcher.storedFields();
+                List<Long> ids = new ArrayList<>(topDocs.scoreDocs.length);
+                for (var scoreDoc : topDocs.scoreDocs) {
+                    ids.add(storedFields.document(scoreDoc.doc, Set.of(ID)).getField(ID).numericValue().longValue());
+                }
+                return ids;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException("could not search the search index", exception);
+        }
+    }
+
+    /**
+     * makes the changes since the last refresh visible to searches
+     */
+    @Scheduled(fixedDelayString = "${search.index-refresh-interval:PT1S}")
+    public void refresh() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException exception) {
+            log.error("could not refresh the search index: {}", exception.getMessage());
+        }
+    }
+
+    /**
+     * writes the changes to disk. changes that were not committed yet are lost on a crash, they are indexed
+     * again when the index is reconciled with the database on startup
+     */
+    @Scheduled(fixedDelayString = "${search.index-commit-interval:PT1M}")
+    public void commit() {
+        if (!isEnabled() || !writer.hasUncommittedChanges()) {
+            return;
+        }
+        try {
+            writer.commit();
+        } catch (IOException exception) {
+            log.error("could not commit the search index: {}", exception.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        searcherManager.close();
+        writer.close();
+    }
+
+    private void update(List<Document> documents) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            for (Document document : documents) {
+                writer.updateDocument(new Term(KEY, document.get(KEY)), document);
+            }
+        } catch (IOException exception) {
+            log.error("could not update the search index: {}", exception.getMessage());
+        }
+    }
+
+    private Query queryFor(Type type, String text) {
+        var words = analyze(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+        var query = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(TYPE, type.name())), BooleanClause.Occur.FILTER);
+        for (int i = 0; i < words.size(); i++) {
+            var word = words.get(i);
+            var wordQuery = new BooleanQuery.Builder()
+                    .add(new BoostQuery(new TermQuery(new Term(NAME, word)), 3), BooleanClause.Occur.SHOULD);
+            if (type == Type.ARTIST) {
+                wordQuery.add(new TermQuery(new Term(GENRES, word)), BooleanClause.Occur.SHOULD);
+            } else {
+                wordQuery.add(new BoostQuery(new TermQuery(new Term(ARTISTS, word)), 1.5f), BooleanClause.Occur.SHOULD);
+            }
+            if (i == words.size() - 1) {
+                // the last word may not be typed completely yet
+                wordQuery.add(new PrefixQuery(new Term(NAME, word)), BooleanClause.Occur.SHOULD);
+            }
+            query.add(wordQuery.build(), BooleanClause.Occur.MUST);
+        }
+        return query.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> words = new ArrayList<>();
+        try (var tokens = analyzer.tokenStream(NAME, text)) {
+            var term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                words.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException exception) {
+            throw new UncheckedIOException("could not analyze the search term", exception);
+        }
+        return words;
+    }
+
+    private static Document document(Type type, long id, String name, String genres, String artists) {
+        var document = new Document();
+        document.add(new StringField(KEY, keyOf(type, id), Field.Store.YES));
+        document.add(new StringField(TYPE, type.name(), Field.Store.NO));
+        document.add(new StoredField(ID, id));
+        if (name != null) {
+            document.add(new TextField(NAME, name, Field.Store.NO));
+        }
+        if (genres != null) {
+            document.add(new TextField(GENRES, genres, Field.Store.NO));
+        }
+        if (artists != null) {
+            document.add(new TextField(ARTISTS, artists, Field.Store.NO));
+        }
+        return document;
+    }
+
+    private static String keyOf(Type type, long id) {
+        return type.name() + ":" + id;
+    }
+
+    private static String artistNamesOf(Album album) {
+        if (album.getArtists() == null) {
+            return null;
+        }
+        return album.getArtists().stream()
+                .map(SimplifiedArtist::getName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String joined(List<String> values) {
+        return values == null ? null : String.join("\n", values);
+    }
+
+    /**
+     * splits the text into words and matches them regardless of case and accents, so "sigur ros" finds "Sigur Rós"
+     */
+    private static class FoldingAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            var tokenizer = new StandardTokenizer();
+            return new TokenStreamComponents(tokenizer, new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer)));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.model.SearchKeyNormalizer;
+
+/**
+ * prepares a search term typed by a user for the name searches of artists and albums
+ */
+public class SearchInputSanitizer {
+
+    /**
+     * the search term folded like the search keys of the names, null if nothing is left to search for
+     */
+    public static String sanitize(String searchTerm) {
+        var searchKey = SearchKeyNormalizer.normalize(searchTerm);
+        return searchKey.isEmpty() ? null : searchKey;
+    }
+}
@@ -0,0 +1,13 @@
+package com.malte.immochallenge.search;
+
+import java.util.List;
+
+/**
+ * the artists and albums matching a search in one list, the best match comes first
+ */
+public record SearchResult(List<SearchHit> hits) {
+
+    public static SearchResult empty() {
+        return new SearchResult(List.of());
+    }
+}
@@ -0,0 +1,182 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.album.AlbumRepository;
+import com.malte.immochallenge.album.AlbumService;
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.artist.ArtistService;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.artist.repository.ArtistRepository;
+import com.malte.immochallenge.search.SearchIndex.Type;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * searches over artists and albums: the combined name search and the relevance ranked full text search.
+ * the full text matches come from the {@link SearchIndex}, the entities are loaded from postgres by id
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchService {
+    private static final int REBUILD_FETCH_SIZE = 1000;
+
+    private final SearchIndex searchIndex;
+    private final SearchConfiguration searchConfiguration;
+    private final ArtistRepository artistRepository;
+    private final AlbumRepository albumRepository;
+    private final ArtistService artistService;
+    private final AlbumService albumService;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * searches the names of artists and albums at the same time and ranks both in one list. every type is limited
+     * on its own, so one type can not crowd out the other
+     */
+    public SearchResult search(String query) {
+        var searchTerm = SearchInputSanitizer.sanitize(query);
+        if (searchTerm == null) {
+            return SearchResult.empty();
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var artists = executor.submit(() -> artistService.searchForArtist(query, Math.max(1, searchConfiguration.getArtistLimit())));
+            var albums = executor.submit(() -> albumService.searchForAlbum(query, Math.max(1, searchConfiguration.getAlbumLimit())));
+            List<SearchHit> hits = new ArrayList<>();
+            try {
+                awaitResult(artists).forEach(artist -> hits.add(SearchHit.of(searchTerm, artist)));
+                awaitResult(albums).forEach(album -> hits.add(SearchHit.of(searchTerm, album)));
+            } catch (RuntimeException exception) {
+                executor.shutdownNow();
+                throw exception;
+            }
+            // the sort is stable, hits with the same score keep the order of the database
+            hits.sort(Comparator.comparingDouble(SearchHit::score).reversed());
+            return new SearchResult(hits);
+        }
+    }
+
+    public FullTextSearchResult searchFullText(String searchTerm) {
+        if (searchTerm == null || searchTerm.isBlank()) {
+            return FullTextSearchResult.empty();
+        }
+        var limit = Math.max(1, searchConfiguration.getResultLimit());
+        var artistIds = searchIndex.search(Type.ARTIST, searchTerm, limit);
+        var albumIds = searchIndex.search(Type.ALBUM, searchTerm, limit);
+        return new FullTextSearchResult(
+                inOrderOf(artistIds, artistRepository.findAllById(artistIds), Artist::getId),
+                inOrderOf(albumIds, albumRepository.findAllById(albumIds), Album::getId));
+    }
+
+    /**
+     * indexes every artist and album of the database again and removes the entries whose row is gone, so the index
+     * catches up with the changes of other instances and with the changes that were not committed before a crash.
+     * it runs on startup and on a schedule, the rows are streamed, so the entities are never all in memory at once.
+     * an entry that is deleted while the index is reconciled may be found until the next run
+     */
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${search.index-reconcile-interval:PT15M}",
+            fixedDelayString = "${search.index-reconcile-interval:PT15M}")
+    public synchronized void reconcileIndex() {
+        if (!searchIndex.isEnabled()) {
+            return;
+        }
+        var started = System.nanoTime();
+        var streamingJdbcTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        streamingJdbcTemplate.setFetchSize(REBUILD_FETCH_SIZE);
+        Set<Long> artistIds = new HashSet<>();
+        streamingJdbcTemplate.query("SELECT id, name, genres FROM artist", resultSet -> {
+            var id = resultSet.getLong("id");
+            artistIds.add(id);
+            searchIndex.index(Type.ARTIST, id, resultSet.getString("name"), resultSet.getString("genres"), null);
+        });
+        Set<Long> albumIds = new HashSet<>();
+        streamingJdbcTemplate.query("""
+                SELECT a.id, a.name, string_agg(aa.name, E'\\n') AS artists
+                FROM album a
+                LEFT JOIN album_artists aa ON aa.album_id = a.id
+                GROUP BY a.id, a.name
+                """, resultSet -> {
+            var id = resultSet.getLong("id");
+            albumIds.add(id);
+            searchIndex.index(Type.ALBUM, id, resultSet.getString("name"), null, resultSet.getString("artists"));
+        });
+        var removed = removeDeleted(Type.ARTIST, artistIds) + removeDeleted(Type.ALBUM, albumIds);
+        searchIndex.commit();
+        searchIndex.refresh();
+        log.info("reconciled the search index with the database in {} ms, it holds {} artists and albums, {} were removed",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), searchIndex.size(), removed);
+    }
+
+    /**
+     * removes the entries that were not read from the database. they are looked up again first, rows that were
+     * inserted while the index was reconciled are indexed by their own transaction and have to be kept
+     */
+    int removeDeleted(Type type, Set<Long> readIds) {
+        var unread = searchIndex.ids(type).stream()
+                .filter(id -> !readIds.contains(id))
+                .toArray(Long[]::new);
+        if (unread.length == 0) {
+            return 0;
+        }
+        var table = type == Type.ARTIST ? "artist" : "album";
+        Set<Long> existing = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE id = ANY(?)", Long.class, (Object) unread));
+        var removed = 0;
+        for (Long id : unread) {
+            if (!existing.contains(id)) {
+                searchIndex.remove(type, id);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static <R> R awaitResult(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the search", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    /**
+     * the entities in the order of the ids, ids whose entity was deleted in the meantime are skipped
+     */
+    private static <T> List<T> inOrderOf(List<Long> ids, Iterable<T> entities, Function<T, Long> idOf) {
+        Map<Long, T> entitiesById = new HashMap<>();
+        entities.forEach(entity -> entitiesById.put(idOf.apply(entity), entity));
+        return ids.stream()
+                .map(entitiesById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+}
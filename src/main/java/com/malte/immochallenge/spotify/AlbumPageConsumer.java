@@ -0,0 +1,33 @@
+package com.malte.immochallenge.spotify;
+
+import java.util.List;
+
+/**
+ * receives the albums of an artist page by page while they are fetched from the api
+ */
+@FunctionalInterface
+public interface AlbumPageConsumer<T> {
+    void accept(String artistId, List<T> albums);
+
+    /**
+     * hands a page to the consumer. the consumer runs handled once the page is persisted, which may be later and on
+     * another thread. a page is only remembered as handled by the response cache once handled ran, pages whose
+     * handled never runs are fetched and handed over again on the next run
+     */
+    default void accept(String artistId, List<T> albums, Runnable handled) {
+        accept(artistId, albums);
+        handled.run();
+    }
+
+    /**
+     * called once all pages of the artist were handed to the consumer
+     */
+    default void artistCompleted(String artistId) {
+    }
+
+    /**
+     * called if a page of the artist could not be fetched, the remaining pages of the artist are skipped
+     */
+    default void artistFailed(String artistId, RuntimeException exception) {
+    }
+}
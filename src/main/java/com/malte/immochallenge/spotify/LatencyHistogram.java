@@ -0,0 +1,104 @@
+package com.malte.immochallenge.spotify;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a histogram of recently observed latencies that records without locking. the buckets grow exponentially by 20%, so a percentile
+ * is at most 20% above the real value. only the current and the previous window are kept, so latencies older
+ * than two windows do not count any more
+ */
+public class LatencyHistogram {
+    private static final long SMALLEST_BUCKET_MICROS = 100;
+    private static final double BUCKET_GROWTH = 1.2;
+    private static final int BUCKET_COUNT = 80;
+    private static final long[] BUCKET_UPPER_BOUNDS_MICROS = new long[BUCKET_COUNT];
+
+    static {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            BUCKET_UPPER_BOUNDS_MICROS[i] = (long) Math.ceil(SMALLEST_BUCKET_MICROS * Math.pow(BUCKET_GROWTH, i));
+        }
+    }
+
+    private final long windowNanos;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKET_COUNT);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long windowStartNanos = System.nanoTime();
+
+    public LatencyHistogram(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void record(Duration latency) {
+        rotateIfDue();
+        current.incrementAndGet(bucketOf(latency.toNanos() / 1000));
+    }
+
+    /**
+     * the number of latencies in the current and the previous window
+     */
+    public long count() {
+        rotateIfDue();
+        var count = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += current.get(i) + previous.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * the latency that the given share of the recorded latencies did not exceed, zero if nothing was recorded
+     *
+     * @param quantile between 0 and 1, e.g. 0.95 for the 95th percentile
+     */
+    public Duration percentile(double quantile) {
+        rotateIfDue();
+        var counts = new long[BUCKET_COUNT];
+        var total = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = current.get(i) + previous.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+        var rank = (long) Math.ceil(Math.clamp(quantile, 0, 1) * total);
+        var seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Duration.ofNanos(BUCKET_UPPER_BOUNDS_MICROS[i] * 1000);
+            }
+        }
+        return Duration.ofNanos(BUCKET_UPPER_BOUNDS_MICROS[BUCKET_COUNT - 1] * 1000);
+    }
+
+    private void rotateIfDue() {
+        if (System.nanoTime() - windowStartNanos < windowNanos) {
+            return;
+        }
+        synchronized (this) {
+            var now = System.nanoTime();
+            var elapsed = now - windowStartNanos;
+            if (elapsed < windowNanos) {
+                return;
+            }
+            // after more than two windows without a rotation both windows are outdated
+            previous = elapsed < 2 * windowNanos ? current : new AtomicLongArray(BUCKET_COUNT);
+            current = new AtomicLongArray(BUCKET_COUNT);
+            windowStartNanos = now;
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros <= SMALLEST_BUCKET_MICROS) {
+            return 0;
+        }
+        var bucket = (int) Math.ceil(Math.log((double) micros / SMALLEST_BUCKET_MICROS) / Math.log(BUCKET_GROWTH));
+        // rounding of the logarithm can put a latency one bucket too low
+        while (bucket < BUCKET_COUNT - 1 && BUCKET_UPPER_BOUNDS_MICROS[bucket] < micros) {
+            bucket++;
+        }
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+}
@@ -12,33 +12,128 @@ import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SpotifyAuthService {
-
     private final SpotifyConfiguration configuration;
     private final RestClient restClient;
 
-    private SpotifyAccessToken accessToken;
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final AtomicReference<SpotifyAccessToken> accessToken = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<SpotifyAccessToken>> refresh = new AtomicReference<>();
 
+    /**
+     * returns the current token without locking. once the token gets close to its expiry it is refreshed in the
+     * background while the current one is still handed out, so callers only wait for the accounts api if there
+     * is no valid token at all. concurrent refreshes share a single request
+     */
     public SpotifyAccessToken getAccessToken() {
-        if (accessToken == null || accessTokenIsNotValid()) {
-            accessToken = getAccessTokenFromApi();
+        var token = accessToken.get();
+        var now = LocalDateTime.now(clock);
+        if (token != null && now.isBefore(expiryOf(token))) {
+            if (!now.isBefore(refreshDueOf(token))) {
+                refresh();
+            }
+            return token;
+        }
+        return awaitToken(refresh());
+    }
+
+    /**
+     * refreshes the token ahead of its expiry even if no requests are made in the meantime
+     */
+    @Scheduled(fixedDelayString = "${spotify.token-refresh-check-interval:PT30S}")
+    public void refreshIfDue() {
+        var token = accessToken.get();
+        if (token != null && !LocalDateTime.now(clock).isBefore(refreshDueOf(token))) {
+            refresh();
+        }
+    }
+
+    /**
+     * the clock the lifetime of the tokens is measured with
+     */
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * starts a refresh on a virtual thread unless one is already running
+     */
+    private CompletableFuture<SpotifyAccessToken> refresh() {
+        while (true) {
+            var inFlight = refresh.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            var future = new CompletableFuture<SpotifyAccessToken>();
+            if (refresh.compareAndSet(null, future)) {
+                Thread.ofVirtual().name("spotify-token-refresh").start(() -> {
+                    try {
+                        var token = getAccessTokenFromApi();
+                        accessToken.set(token);
+                        refresh.compareAndSet(future, null);
+                        future.complete(token);
+                    } catch (Throwable throwable) {
+                        refresh.compareAndSet(future, null);
+                        logRefreshFailure(throwable);
+                        future.completeExceptionally(throwable);
+                    }
+                });
+                return future;
+            }
+        }
+    }
+
+    /**
+     * a background refresh has no caller to throw to, the current token is still handed out until it expires
+     */
+    private void logRefreshFailure(Throwable throwable) {
+        var token = accessToken.get();
+        if (token == null) {
+            log.warn("could not get a spotify access token: {}", throwable.getMessage());
+        } else {
+            log.warn("could not refresh the spotify access token, the current one expires at {}: {}",
+                    expiryOf(token), throwable.getMessage());
+        }
+    }
+
+    private static SpotifyAccessToken awaitToken(CompletableFuture<SpotifyAccessToken> refresh) {
+        try {
+            return refresh.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the spotify access token", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(exception.getCause());
         }
-        return accessToken;
     }
 
     private SpotifyAccessToken getAccessTokenFromApi() {
         log.info("Refreshing spotify access token");
         ResponseEntity<SpotifyAccessTokenResponse> response = restClient.post()
-                .uri("https://accounts.spotify.com/api/token")
+                .uri(configuration.getTokenUrl())
                 .contentType(MediaType.APPLICATION_FORM_URLENCODED)
                 .body("grant_type=client_credentials&client_id=" + configuration.getClientId() + "&client_secret=" + configuration.getClientSecret())
                 .retrieve()
@@ -50,15 +145,27 @@ public class SpotifyAuthService {
                     .token(accessTokenResponse.getAccess_token())
                     .tokenType(accessTokenResponse.getToken_type())
                     .expiresIn(accessTokenResponse.getExpires_in())
-                    .timestamp(LocalDateTime.now())
+                    .timestamp(LocalDateTime.now(clock))
                     .build();
         } else {
             throw new SpotifyAuthException("unexpected error", "body was empty on success. this should not happen");
         }
     }
 
-    private boolean accessTokenIsNotValid() {
-        return accessToken.getTimestamp().plusSeconds(accessToken.getExpiresIn()).isBefore(LocalDateTime.now());
+    private static LocalDateTime expiryOf(SpotifyAccessToken token) {
+        return token.getTimestamp().plusSeconds(token.getExpiresIn());
+    }
+
+    /**
+     * the refresh margin is capped at half of the lifetime, so short-lived tokens are not refreshed on every call
+     */
+    private LocalDateTime refreshDueOf(SpotifyAccessToken token) {
+        var lifetime = Duration.ofSeconds(token.getExpiresIn());
+        var margin = Optional.ofNullable(configuration.getTokenRefreshMargin()).orElse(Duration.ZERO);
+        if (margin.compareTo(lifetime.dividedBy(2)) > 0) {
+            margin = lifetime.dividedBy(2);
+        }
+        return expiryOf(token).minus(margin);
     }
 
 
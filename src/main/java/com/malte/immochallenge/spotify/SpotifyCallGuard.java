@@ -0,0 +1,305 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.exception.SpotifyApiException;
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
+import com.malte.immochallenge.spotify.exception.SpotifyUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * protects the synchronization from a degraded api:
+ * <ul>
+ *     <li>every call has a hard timeout and every run a deadline, calls after the deadline fail immediately</li>
+ *     <li>a bulkhead caps the number of threads that can be stuck in a call at the same time. a call that
+ *     timed out keeps its permit until its thread actually returns</li>
+ *     <li>a circuit breaker opens after {@link SpotifyConfiguration#getCircuitBreakerFailureThreshold()}
+ *     failures in a row and rejects all calls while it is open. afterwards a single probe call decides
+ *     whether it closes again</li>
+ * </ul>
+ * only server errors, timeouts and io errors count as failures, any other answer shows that the api is up.
+ * a call that was interrupted or cancelled, like the losing attempt of a hedged call, says nothing about the api
+ * and counts as neither
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpotifyCallGuard implements MeterBinder {
+
+    public enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final SpotifyConfiguration configuration;
+
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejectedByCircuitBreaker = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final LongAdder rejectedByDeadline = new LongAdder();
+    private volatile Semaphore bulkhead;
+    private volatile long runDeadlineNanos;
+    private volatile boolean runDeadlineSet;
+
+    // the circuit breaker state is guarded by this
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean probeInFlight;
+
+    /**
+     * sets the deadline for all calls until the returned deadline is closed
+     */
+    public RunDeadline startRun() {
+        var runTimeout = configuration.getRunTimeout();
+        runDeadlineSet = runTimeout != null;
+        if (runTimeout != null) {
+            runDeadlineNanos = System.nanoTime() + runTimeout.toNanos();
+        }
+        return new RunDeadline();
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        checkRunDeadline();
+        acquireCircuit();
+        var bulkhead = bulkhead();
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            rejectedByBulkhead.increment();
+            releaseProbe();
+            throw new SpotifyUnavailableException(HttpStatus.SERVICE_UNAVAILABLE, "too many calls to the spotify api are stuck");
+        }
+        try {
+            var result = callWithTimeout(call, bulkhead);
+            onSuccess();
+            return result;
+        } catch (RuntimeException exception) {
+            if (isAbandoned(exception)) {
+                // the permit was already released, a probe that was abandoned lets the next call probe
+                releaseProbe();
+            } else if (isFailure(exception)) {
+                onFailure(exception);
+            } else {
+                onSuccess();
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("spotify.circuit_breaker.state", this, guard -> guard.getCircuitState().ordinal())
+                .description("the state of the circuit breaker, 0 closed, 1 open, 2 half open")
+                .register(registry);
+        Gauge.builder("spotify.bulkhead.active_calls", this, SpotifyCallGuard::getActiveCalls)
+                .description("the number of threads currently in a call to the api")
+                .register(registry);
+        FunctionCounter.builder("spotify.call_guard.timeouts", timeouts, LongAdder::sum)
+                .description("the number of calls that were given up after the call timeout")
+                .register(registry);
+        FunctionCounter.builder("spotify.call_guard.rejected", rejectedByCircuitBreaker, LongAdder::sum)
+                .tag("reason", "circuit_open")
+                .description("the number of calls that were not made")
+                .register(registry);
+        FunctionCounter.builder("spotify.call_guard.rejected", rejectedByBulkhead, LongAdder::sum)
+                .tag("reason", "bulkhead_full")
+                .description("the number of calls that were not made")
+                .register(registry);
+        FunctionCounter.builder("spotify.call_guard.rejected", rejectedByDeadline, LongAdder::sum)
+                .tag("reason", "run_deadline")
+                .description("the number of calls that were not made")
+                .register(registry);
+    }
+
+    synchronized CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    int getActiveCalls() {
+        var bulkhead = bulkhead();
+        return bulkhead == null ? 0 : maxActiveCalls() - bulkhead.availablePermits();
+    }
+
+    private <T> T callWithTimeout(Supplier<T> call, Semaphore bulkhead) {
+        var callTimeout = configuration.getCallTimeout();
+        if (callTimeout == null) {
+            try {
+                return call.get();
+            } finally {
+                releasePermit(bulkhead);
+            }
+        }
+        var future = new CompletableFuture<T>();
+        var caller = Thread.ofVirtual().name("spotify-call").start(() -> {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = call.get();
+            } catch (Throwable throwable) {
+                failure = throwable;
+            } finally {
+                // the permit is released before the caller continues, so it can make its next call right away
+                releasePermit(bulkhead);
+            }
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        });
+        try {
+            return future.get(callTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException exception) {
+            timeouts.increment();
+            // socket io of virtual threads is interruptible, the stuck call is aborted
+            caller.interrupt();
+            throw new SpotifyUnavailableException(HttpStatus.GATEWAY_TIMEOUT,
+                    "the spotify api did not answer within " + callTimeout.toMillis() + " ms");
+        } catch (InterruptedException exception) {
+            caller.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the spotify api", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    private void checkRunDeadline() {
+        if (runDeadlineSet && System.nanoTime() - runDeadlineNanos >= 0) {
+            rejectedByDeadline.increment();
+            throw new SpotifyUnavailableException(HttpStatus.SERVICE_UNAVAILABLE, "the deadline of the synchronization run has passed");
+        }
+    }
+
+    private synchronized void acquireCircuit() {
+        if (circuitState == CircuitState.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+            circuitState = CircuitState.HALF_OPEN;
+            probeInFlight = false;
+            log.info("probing whether the spotify api recovered");
+        }
+        if (circuitState == CircuitState.OPEN || (circuitState == CircuitState.HALF_OPEN && probeInFlight)) {
+            rejectedByCircuitBreaker.increment();
+            throw new SpotifyUnavailableException(HttpStatus.SERVICE_UNAVAILABLE, "the circuit breaker for the spotify api is open");
+        }
+        if (circuitState == CircuitState.HALF_OPEN) {
+            probeInFlight = true;
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (circuitState == CircuitState.HALF_OPEN) {
+            log.info("the spotify api recovered, closing the circuit breaker");
+        }
+        circuitState = CircuitState.CLOSED;
+        probeInFlight = false;
+    }
+
+    private synchronized void onFailure(RuntimeException exception) {
+        consecutiveFailures++;
+        var threshold = configuration.getCircuitBreakerFailureThreshold();
+        var shouldOpen = circuitState == CircuitState.HALF_OPEN
+                || (circuitState == CircuitState.CLOSED && threshold > 0 && consecutiveFailures >= threshold);
+        if (shouldOpen) {
+            var openDuration = configuration.getCircuitBreakerOpenDuration() == null ? Duration.ZERO : configuration.getCircuitBreakerOpenDuration();
+            circuitState = CircuitState.OPEN;
+            openUntilNanos = System.nanoTime() + openDuration.toNanos();
+            log.warn("opening the circuit breaker for the spotify api for {} seconds after {} failures: {}",
+                    openDuration.toSeconds(), consecutiveFailures, exception.getMessage());
+        }
+        probeInFlight = false;
+    }
+
+    /**
+     * whether the caller gave up on the call, an interrupted socket read surfaces as an io error.
+     * a socket timeout is an interrupted io error as well, but it is a failure of the api
+     */
+    private static boolean isAbandoned(RuntimeException exception) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return false;
+            }
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException
+                    || cause instanceof ClosedByInterruptException || cause instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFailure(RuntimeException exception) {
+        if (exception instanceof SpotifyRateLimitException) {
+            return false;
+        }
+        if (exception instanceof SpotifyApiException apiException) {
+            return apiException.getStatus() == null || apiException.getStatus().is5xxServerError();
+        }
+        return exception instanceof RestClientException;
+    }
+
+    private Semaphore bulkhead() {
+        if (maxActiveCalls() <= 0) {
+            return null;
+        }
+        if (bulkhead == null) {
+            synchronized (this) {
+                if (bulkhead == null) {
+                    bulkhead = new Semaphore(maxActiveCalls());
+                }
+            }
+        }
+        return bulkhead;
+    }
+
+    private static void releasePermit(Semaphore bulkhead) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private int maxActiveCalls() {
+        return configuration.getMaxActiveCalls();
+    }
+
+    /**
+     * ends the deadline of the run when closed
+     */
+    public class RunDeadline implements AutoCloseable {
+        @Override
+        public void close() {
+            runDeadlineSet = false;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.List;
 
 @Component
@@ -13,6 +14,121 @@ public class SpotifyConfiguration {
 
     String clientId;
     String clientSecret;
+    /**
+     * the token endpoint of the accounts api, can be pointed to a stub server
+     */
+    String tokenUrl = "https://accounts.spotify.com/api/token";
+    /**
+     * how long before its expiry the access token is refreshed in the background
+     */
+    Duration tokenRefreshMargin = Duration.ofMinutes(5);
+    /**
+     * how often the access token is checked for an upcoming expiry while no requests are made
+     */
+    Duration tokenRefreshCheckInterval = Duration.ofSeconds(30);
+
+    /**
+     * the base url of the web api, can be pointed to a stub server
+     */
+    String apiUrl = "https://api.spotify.com/v1";
 
     List<String> artistIds;
+
+    /**
+     * the maximum number of requests that are sent to the api at the same time
+     */
+    int maxConcurrentRequests = 8;
+    /**
+     * the size of the connection pool shared by all calls to spotify
+     */
+    int maxConnections = 16;
+    /**
+     * how long to wait for a connection to be established or for a free connection from the pool
+     */
+    Duration connectTimeout = Duration.ofSeconds(5);
+    /**
+     * how long to wait for data on an open connection
+     */
+    Duration readTimeout = Duration.ofSeconds(30);
+    /**
+     * pooled connections that were not used for this long are closed
+     */
+    Duration connectionIdleTimeout = Duration.ofMinutes(1);
+    /**
+     * asks for gzip encoded responses, they are decompressed while they are read
+     */
+    boolean compressionEnabled = true;
+    /**
+     * a call to the api that takes longer than this is given up
+     */
+    Duration callTimeout = Duration.ofSeconds(20);
+    /**
+     * calls made after a synchronization run took this long fail immediately, the remaining artists are
+     * synchronized by the next run
+     */
+    Duration runTimeout = Duration.ofMinutes(10);
+    /**
+     * the maximum number of threads that can be in a call to the api at the same time, including calls that
+     * timed out but did not return yet
+     */
+    int maxActiveCalls = 16;
+    /**
+     * the number of failed calls in a row after which the circuit breaker opens, 0 disables it
+     */
+    int circuitBreakerFailureThreshold = 5;
+    /**
+     * how long the circuit breaker stays open before a probe call is let through
+     */
+    Duration circuitBreakerOpenDuration = Duration.ofSeconds(30);
+    /**
+     * sends a second request if the first one takes longer than most requests did recently
+     */
+    boolean hedgingEnabled = false;
+    /**
+     * a request is hedged once it took longer than this share of the recent requests
+     */
+    double hedgePercentile = 0.95;
+    /**
+     * the share of requests that may be sent a second time
+     */
+    double hedgeBudget = 0.05;
+    /**
+     * no request is hedged until this many latencies were observed
+     */
+    int hedgeMinSamples = 20;
+    /**
+     * how long an observed latency is taken into account, between one and two windows
+     */
+    Duration latencyWindow = Duration.ofMinutes(1);
+    /**
+     * the steady state request rate, a value of 0 or less disables the pacing
+     */
+    double requestsPerSecond = 10;
+    /**
+     * how often a request that was rejected with 429 is retried
+     */
+    int rateLimitMaxRetries = 3;
+
+    /**
+     * the number of albums requested per page, the api allows at most 50
+     */
+    int albumPageSize = 50;
+    /**
+     * comma separated album types to fetch, e.g. album,single,appears_on,compilation
+     */
+    String albumIncludeGroups = "album,single,appears_on,compilation";
+
+    /**
+     * where the validators of album pages are stored, no directory disables conditional requests
+     */
+    String responseCacheDirectory;
+    /**
+     * the maximum number of responses that are remembered, the least recently used ones are dropped first
+     */
+    int responseCacheMaxEntries = 10000;
+    /**
+     * pages that were handed over longer ago are requested and handed over again, even if they did not change.
+     * this brings back albums that were deleted from the database, a value of 0 or less keeps the pages forever
+     */
+    Duration responseCacheMaxAge = Duration.ofDays(7);
 }
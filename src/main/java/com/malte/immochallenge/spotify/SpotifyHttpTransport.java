@@ -0,0 +1,60 @@
+package com.malte.immochallenge.spotify;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * the http transport of all calls to spotify: a bounded pool of keep-alive connections with timeouts and
+ * gzip compression. the classic apache client only speaks http/1.1, the pool keeps the connections open
+ * instead, so a run only pays the tcp and tls setup once per pooled connection
+ */
+public class SpotifyHttpTransport {
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+    private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
+    public static PoolingHttpClientConnectionManager connectionManager(SpotifyConfiguration configuration) {
+        var maxConnections = Math.max(1, configuration.getMaxConnections());
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                // all calls go to spotify, so a single route may use the whole pool
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(timeoutOf(configuration.getConnectTimeout(), DEFAULT_CONNECT_TIMEOUT))
+                        .setSocketTimeout(timeoutOf(configuration.getReadTimeout(), DEFAULT_READ_TIMEOUT))
+                        .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+                        .build())
+                .build();
+    }
+
+    /**
+     * configures the client to use the pool. content compression is on by default in the apache client:
+     * it sends Accept-Encoding: gzip and decompresses the body while it is streamed
+     */
+    public static HttpClientBuilder configure(HttpClientBuilder builder, SpotifyConfiguration configuration,
+                                              PoolingHttpClientConnectionManager connectionManager) {
+        builder.setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeoutOf(configuration.getConnectTimeout(), DEFAULT_CONNECT_TIMEOUT))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(timeoutOf(configuration.getConnectionIdleTimeout(), DEFAULT_IDLE_TIMEOUT));
+        if (!configuration.isCompressionEnabled()) {
+            builder.disableContentCompression();
+        }
+        return builder;
+    }
+
+    private static Timeout timeoutOf(Duration duration, Duration defaultDuration) {
+        return Timeout.of(Optional.ofNullable(duration).orElse(defaultDuration));
+    }
+}
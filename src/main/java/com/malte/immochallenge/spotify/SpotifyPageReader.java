@@ -0,0 +1,13 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.response.SpotifyPage;
+
+import java.io.IOException;
+
+/**
+ * decodes the body of an api response into the items the caller works with
+ */
+@FunctionalInterface
+public interface SpotifyPageReader<T> {
+    SpotifyPage<T> read(byte[] body) throws IOException;
+}
@@ -0,0 +1,215 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * paces all requests to the spotify api. a token bucket limits the steady state request rate to
+ * {@link SpotifyConfiguration#getRequestsPerSecond()} and the number of requests in flight is adapted to the
+ * api: it grows additively with every successful request, up to
+ * {@link SpotifyConfiguration#getMaxConcurrentRequests()}, and halves when the api answers with 429.
+ * after a 429 no request is sent until the Retry-After of the response has passed
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpotifyRateLimiter implements MeterBinder {
+    private final SpotifyConfiguration configuration;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+
+    // all fields below are guarded by the lock
+    private double concurrencyLimit;
+    private int inFlight;
+    private double availableTokens = 1;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = System.nanoTime();
+
+    /**
+     * runs the call once a permit is available. calls that are rejected with 429 are retried after the
+     * Retry-After of the response, at most {@link SpotifyConfiguration#getRateLimitMaxRetries()} times
+     */
+    public <T> T execute(Supplier<T> call) {
+        return retrying(() -> attempt(call));
+    }
+
+    /**
+     * retries the call when it is rejected with 429. the call sends its requests through {@link #attempt(Supplier)},
+     * which already waits for the Retry-After, so a hedged call can send several requests that each take a permit
+     */
+    public <T> T retrying(Supplier<T> call) {
+        int retries = 0;
+        while (true) {
+            try {
+                return call.get();
+            } catch (SpotifyRateLimitException exception) {
+                if (retries++ >= configuration.getRateLimitMaxRetries()) {
+                    throw exception;
+                }
+                log.warn("spotify api rate limit exceeded, retrying in {} seconds", exception.getRetryAfter().toSeconds());
+            }
+        }
+    }
+
+    /**
+     * sends a single request once a permit is available. a 429 halves the concurrency and pauses all requests
+     * until its Retry-After has passed, then it is thrown
+     */
+    public <T> T attempt(Supplier<T> call) {
+        acquire();
+        var throttled = false;
+        try {
+            return call.get();
+        } catch (SpotifyRateLimitException exception) {
+            throttled = true;
+            onThrottled(exception.getRetryAfter());
+            throw exception;
+        } finally {
+            release(!throttled);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("spotify.rate_limiter.concurrency_limit", this, SpotifyRateLimiter::getConcurrencyLimit)
+                .description("the current adaptive limit of requests in flight")
+                .register(registry);
+        Gauge.builder("spotify.rate_limiter.in_flight", this, SpotifyRateLimiter::getInFlight)
+                .description("the number of requests currently in flight")
+                .register(registry);
+        Gauge.builder("spotify.rate_limiter.requests_per_second", configuration, SpotifyConfiguration::getRequestsPerSecond)
+                .description("the configured steady state request rate")
+                .register(registry);
+        FunctionCounter.builder("spotify.rate_limiter.requests", requests, LongAdder::sum)
+                .description("the number of requests sent to the api")
+                .register(registry);
+        FunctionCounter.builder("spotify.rate_limiter.throttled", throttledRequests, LongAdder::sum)
+                .description("the number of requests the api answered with 429")
+                .register(registry);
+    }
+
+    double getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return currentConcurrencyLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            while (true) {
+                var now = System.nanoTime();
+                if (pausedUntilNanos - now > 0) {
+                    stateChanged.awaitNanos(pausedUntilNanos - now);
+                } else if (inFlight >= Math.max(1, (int) currentConcurrencyLimit())) {
+                    stateChanged.await();
+                } else if (tryTakeToken(now)) {
+                    inFlight++;
+                    requests.increment();
+                    return;
+                } else {
+                    var nanosUntilNextToken = (long) ((1 - availableTokens) / configuration.getRequestsPerSecond() * TimeUnit.SECONDS.toNanos(1));
+                    stateChanged.awaitNanos(Math.max(1, nanosUntilNextToken));
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the spotify rate limit", exception);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(boolean successful) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (successful) {
+                var limit = currentConcurrencyLimit();
+                concurrencyLimit = Math.min(maxConcurrency(), limit + 1 / limit);
+            }
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onThrottled(Duration retryAfter) {
+        lock.lock();
+        try {
+            throttledRequests.increment();
+            var now = System.nanoTime();
+            // requests that were already in flight when the api started throttling only count once
+            if (pausedUntilNanos - now <= 0) {
+                concurrencyLimit = Math.max(1, currentConcurrencyLimit() / 2);
+                log.info("spotify api rate limit exceeded, reducing concurrency to {}", (int) concurrencyLimit);
+            }
+            var resumeAt = now + retryAfter.toNanos();
+            if (resumeAt - pausedUntilNanos > 0) {
+                pausedUntilNanos = resumeAt;
+            }
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryTakeToken(long now) {
+        var requestsPerSecond = configuration.getRequestsPerSecond();
+        if (requestsPerSecond <= 0) {
+            return true;
+        }
+        var capacity = Math.max(1, requestsPerSecond);
+        var elapsedSeconds = (double) (now - lastRefillNanos) / TimeUnit.SECONDS.toNanos(1);
+        availableTokens = Math.min(capacity, availableTokens + elapsedSeconds * requestsPerSecond);
+        lastRefillNanos = now;
+        if (availableTokens < 1) {
+            return false;
+        }
+        availableTokens--;
+        return true;
+    }
+
+    private double currentConcurrencyLimit() {
+        if (concurrencyLimit <= 0 || concurrencyLimit > maxConcurrency()) {
+            concurrencyLimit = maxConcurrency();
+        }
+        return concurrencyLimit;
+    }
+
+    private int maxConcurrency() {
+        return Math.max(1, configuration.getMaxConcurrentRequests());
+    }
+}
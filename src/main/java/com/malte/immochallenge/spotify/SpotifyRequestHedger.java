@@ -0,0 +1,163 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * cuts the tail latency of api calls. if a call did not answer within
+ * {@link SpotifyConfiguration#getHedgePercentile()} of the recently observed latencies, the same call is sent a
+ * second time and whichever answers first is used, the other one is interrupted.
+ * every call adds {@link SpotifyConfiguration#getHedgeBudget()} to a budget and every hedge takes one from it,
+ * so hedging can only add that share of calls on top, even if the whole api gets slow.
+ * a 429 of any attempt is the result, even if the other attempt could still answer
+ */
+@Component
+public class SpotifyRequestHedger implements MeterBinder {
+    private static final double MAX_BUDGET = 10;
+    private static final Duration DEFAULT_LATENCY_WINDOW = Duration.ofMinutes(1);
+
+    private final SpotifyConfiguration configuration;
+    private final LatencyHistogram latencies;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    // guarded by this
+    private double budget;
+
+    public SpotifyRequestHedger(SpotifyConfiguration configuration) {
+        this.configuration = configuration;
+        this.latencies = new LatencyHistogram(Optional.ofNullable(configuration.getLatencyWindow()).orElse(DEFAULT_LATENCY_WINDOW));
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        calls.increment();
+        addBudget();
+        if (!configuration.isHedgingEnabled() || latencies.count() < Math.max(1, configuration.getHedgeMinSamples())) {
+            return timed(call);
+        }
+        var hedgeDelay = latencies.percentile(configuration.getHedgePercentile());
+        var result = new CompletableFuture<T>();
+        var outstanding = new AtomicInteger(1);
+        var primary = start(call, result, outstanding, false);
+        Thread hedge = null;
+        try {
+            try {
+                return result.get(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException exception) {
+                if (!tryTakeBudget()) {
+                    budgetExhausted.increment();
+                    return result.get();
+                }
+                hedges.increment();
+                outstanding.incrementAndGet();
+                hedge = start(call, result, outstanding, true);
+                return result.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the spotify api", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(exception.getCause());
+        } finally {
+            // the call that lost is not needed any more
+            primary.interrupt();
+            if (hedge != null) {
+                hedge.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (var quantile : List.of(0.5, 0.95, 0.99)) {
+            Gauge.builder("spotify.hedger.latency", latencies, histogram -> histogram.percentile(quantile).toNanos() / 1e6)
+                    .tag("quantile", String.valueOf(quantile))
+                    .baseUnit("milliseconds")
+                    .description("the recently observed latency of api calls")
+                    .register(registry);
+        }
+        FunctionCounter.builder("spotify.hedger.calls", calls, LongAdder::sum)
+                .description("the number of calls that went through the hedger")
+                .register(registry);
+        FunctionCounter.builder("spotify.hedger.hedges", hedges, LongAdder::sum)
+                .description("the number of calls that were sent a second time")
+                .register(registry);
+        FunctionCounter.builder("spotify.hedger.hedges_won", hedgesWon, LongAdder::sum)
+                .description("the number of hedged calls that answered before the original call")
+                .register(registry);
+        FunctionCounter.builder("spotify.hedger.budget_exhausted", budgetExhausted, LongAdder::sum)
+                .description("the number of calls that would have been hedged if the budget allowed it")
+                .register(registry);
+    }
+
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    long getHedges() {
+        return hedges.sum();
+    }
+
+    long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    private <T> Thread start(Supplier<T> call, CompletableFuture<T> result, AtomicInteger outstanding, boolean isHedge) {
+        return Thread.ofVirtual().name(isHedge ? "spotify-hedge" : "spotify-call").start(() -> {
+            try {
+                if (result.complete(timed(call)) && isHedge) {
+                    hedgesWon.increment();
+                }
+            } catch (Throwable throwable) {
+                // a failure is only the result if no other call can answer any more. a 429 is the result right
+                // away, the other attempt is interrupted while the api asks us to back off
+                if (outstanding.decrementAndGet() == 0 || throwable instanceof SpotifyRateLimitException) {
+                    result.completeExceptionally(throwable);
+                }
+            }
+        });
+    }
+
+    private <T> T timed(Supplier<T> call) {
+        var started = System.nanoTime();
+        var result = call.get();
+        latencies.record(Duration.ofNanos(System.nanoTime() - started));
+        return result;
+    }
+
+    private synchronized void addBudget() {
+        budget = Math.min(MAX_BUDGET, budget + Math.max(0, configuration.getHedgeBudget()));
+    }
+
+    private synchronized boolean tryTakeBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        return true;
+    }
+}
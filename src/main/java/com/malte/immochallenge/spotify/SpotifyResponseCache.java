@@ -0,0 +1,183 @@
+package com.malte.immochallenge.spotify;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * remembers the validators of api responses by url, so unchanged responses can be detected without parsing
+ * them again. only the validators are stored, never the bodies. the entries are kept in least recently used
+ * order, bounded by {@link SpotifyConfiguration#getResponseCacheMaxEntries()} and persisted to
+ * {@link SpotifyConfiguration#getResponseCacheDirectory()}. without a directory the cache is disabled.
+ * the cache does not know the database, an entry that is older than {@link SpotifyConfiguration#getResponseCacheMaxAge()}
+ * is not returned anymore, so its page is handed over again, e.g. after its albums were deleted or the database was reset
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpotifyResponseCache {
+    private static final String INDEX_FILE = "responses.json";
+
+    private final SpotifyConfiguration configuration;
+    private final ObjectMapper objectMapper;
+
+    private final LinkedHashMap<String, StoredEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Path loadedDirectory;
+    private boolean dirty;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * @param etag         the ETag header of the response, sent back as If-None-Match
+     * @param lastModified the Last-Modified header of the response, sent back as If-Modified-Since
+     * @param bodyHash     sha-256 of the body, detects unchanged responses where the api ignores the validators
+     * @param next         the url of the next page, so the pagination can be followed without the body
+     */
+    public record Entry(String etag, String lastModified, String bodyHash, String next) {
+    }
+
+    /**
+     * @param handedOver when the page was last handed over, in epoch milliseconds
+     */
+    record StoredEntry(Entry entry, long handedOver) {
+    }
+
+    public boolean isEnabled() {
+        var directory = configuration.getResponseCacheDirectory();
+        return directory != null && !directory.isBlank();
+    }
+
+    /**
+     * the entry of the url, null if there is none or it is too old
+     */
+    public synchronized Entry get(String url) {
+        if (!isEnabled()) {
+            return null;
+        }
+        ensureLoaded();
+        var storedEntry = entries.get(url);
+        if (storedEntry == null || isExpired(storedEntry)) {
+            return null;
+        }
+        return storedEntry.entry();
+    }
+
+    /**
+     * stores the entry of a response. callers should only put an entry after the response was handled
+     * successfully, otherwise the next run would skip a response that was never persisted
+     */
+    public synchronized void put(String url, Entry entry) {
+        store(url, entry, clock.millis());
+    }
+
+    /**
+     * stores the entry of a response that did not change, the page keeps the age of the response that was handed over
+     */
+    public synchronized void revalidate(String url, Entry entry) {
+        if (!isEnabled()) {
+            return;
+        }
+        ensureLoaded();
+        var storedEntry = entries.get(url);
+        store(url, entry, storedEntry == null ? clock.millis() : storedEntry.handedOver());
+    }
+
+    /**
+     * writes all entries that were put since the last flush to disk
+     */
+    public synchronized void flush() {
+        if (!isEnabled() || !dirty) {
+            return;
+        }
+        try {
+            Files.createDirectories(loadedDirectory);
+            var temporaryFile = Files.createTempFile(loadedDirectory, INDEX_FILE, ".tmp");
+            objectMapper.writeValue(temporaryFile.toFile(), entries);
+            Files.move(temporaryFile, loadedDirectory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException exception) {
+            log.error("could not write the spotify response cache: {}", exception.getMessage());
+        }
+    }
+
+    public static String hashOf(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    /**
+     * the clock the age of the entries is measured with
+     */
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private void store(String url, Entry entry, long handedOver) {
+        if (!isEnabled()) {
+            return;
+        }
+        ensureLoaded();
+        var storedEntry = new StoredEntry(entry, handedOver);
+        if (!storedEntry.equals(entries.put(url, storedEntry))) {
+            dirty = true;
+        }
+        evictEldestEntries();
+    }
+
+    private boolean isExpired(StoredEntry storedEntry) {
+        var maxAge = configuration.getResponseCacheMaxAge();
+        return maxAge != null && maxAge.isPositive() && clock.millis() - storedEntry.handedOver() > maxAge.toMillis();
+    }
+
+    private void ensureLoaded() {
+        var directory = Path.of(configuration.getResponseCacheDirectory());
+        if (Objects.equals(directory, loadedDirectory)) {
+            return;
+        }
+        entries.clear();
+        dirty = false;
+        loadedDirectory = directory;
+        var indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            entries.putAll(objectMapper.readValue(indexFile.toFile(), new TypeReference<LinkedHashMap<String, StoredEntry>>() {
+            }));
+            entries.values().removeIf(storedEntry -> storedEntry == null || storedEntry.entry() == null);
+            evictEldestEntries();
+        } catch (IOException exception) {
+            // a broken cache only costs a full download
+            log.warn("could not read the spotify response cache, starting empty: {}", exception.getMessage());
+        }
+    }
+
+    private void evictEldestEntries() {
+        var maxEntries = Math.max(1, configuration.getResponseCacheMaxEntries());
+        var iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            dirty = true;
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -2,33 +2,56 @@ package com.malte.immochallenge.spotify;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.malte.immochallenge.spotify.exception.SpotifyApiException;
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
 import com.malte.immochallenge.spotify.model.SpotifyAlbum;
 import com.malte.immochallenge.spotify.model.SpotifyApiResponse;
 import com.malte.immochallenge.spotify.model.SpotifyArtist;
 import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
 import com.malte.immochallenge.spotify.response.SpotifyApiErrorResponse;
 import com.malte.immochallenge.spotify.response.SpotifyArtistsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyPage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyList;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SpotifyService {
+    private static final int MAX_ARTIST_IDS_PER_REQUEST = 50;
+    private static final int MAX_ALBUM_PAGE_SIZE = 50;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
 
     private final RestClient restClient;
     private final SpotifyAuthService spotifyAuthService;
     private final SpotifyConfiguration configuration;
+    private final SpotifyRateLimiter rateLimiter;
+    private final SpotifyCallGuard callGuard;
+    private final SpotifyRequestHedger requestHedger;
+    private final SpotifyResponseCache responseCache;
+    private final ObjectMapper objectMapper;
 
 
     public SpotifyApiResponse getDataFromSpotify() {
@@ -39,41 +62,338 @@ public class SpotifyService {
     }
 
     public List<SpotifyArtist> getArtistFromApi() {
+        return getArtistFromApi(configuration.getArtistIds());
+    }
+
+    /**
+     * fetches the given artists. the ids are split into chunks of at most 50 ids, the limit of the
+     * api, and the chunks are fetched concurrently. the artists are returned in the order of the given ids
+     */
+    public List<SpotifyArtist> getArtistFromApi(List<String> artistIds) {
+        return getArtistFromApi(artistIds, this::readArtistsResponse);
+    }
+
+    /**
+     * same as {@link #getArtistFromApi(List)}, but every response is decoded by the given reader
+     */
+    public <T> List<T> getArtistFromApi(List<String> artistIds, SpotifyPageReader<T> reader) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < artistIds.size(); start += MAX_ARTIST_IDS_PER_REQUEST) {
+            chunks.add(artistIds.subList(start, Math.min(start + MAX_ARTIST_IDS_PER_REQUEST, artistIds.size())));
+        }
+        return fetchConcurrently(chunks, chunk -> getArtistChunkFromApi(chunk, reader)).stream()
+                .flatMap(Collection::stream)
+                .toList();
+    }
+
+    private <T> List<T> getArtistChunkFromApi(List<String> artistIds, SpotifyPageReader<T> reader) {
         var accessToken = spotifyAuthService.getAccessToken();
-        var artistsResponse = restClient.get()
-                .uri("https://api.spotify.com/v1/artists?ids={ids}", String.join(",", configuration.getArtistIds()))
+        var artistsResponse = send(() -> restClient.get()
+                .uri(configuration.getApiUrl() + "/artists?ids={ids}", String.join(",", artistIds))
                 .header("Authorization", "Bearer " + accessToken.getToken())
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, SpotifyService::handleApiError)
-                .toEntity(SpotifyArtistsResponse.class);
-        if (artistsResponse.getBody() == null || artistsResponse.getBody().getArtists() == null) {
+                .toEntity(byte[].class));
+        var artists = artistsResponse.getBody() == null || artistsResponse.getBody().length == 0
+                ? null
+                : read(reader, artistsResponse.getBody(), "the artists " + artistIds).items();
+        if (artists == null) {
             throw new SpotifyApiException((HttpStatus) artistsResponse.getStatusCode(), "body was empty on success. this should not happen");
         }
-        return artistsResponse.getBody().getArtists();
+        return artists;
     }
 
+    /**
+     * fetches all albums of all configured artists concurrently. the albums are returned in the order
+     * of the configured artists. if the albums of one artist can not be fetched, that artist is skipped
+     */
     public List<SpotifyAlbum> getAlbumsFromApi() {
-        return configuration.getArtistIds().stream()
-                .map(this::getAlbumsForArtistsFromApi)
-                .map(SpotifyAlbumsResponse::getItems)
+        return fetchConcurrently(configuration.getArtistIds(), this::getAlbumsForArtist).stream()
                 .flatMap(Collection::stream)
                 .toList();
     }
 
-    private SpotifyAlbumsResponse getAlbumsForArtistsFromApi(String artistId) {
+    public void streamAlbumsFromApi(AlbumPageConsumer<SpotifyAlbum> consumer) {
+        streamAlbumsFromApi(configuration.getArtistIds(), consumer);
+    }
+
+    /**
+     * fetches all albums of the given artists concurrently and hands every page to the consumer as
+     * soon as it arrives. the consumer is never called by two threads at the same time, so it can persist
+     * a page while the other pages are still being fetched.
+     * pages that did not change since they were last handed to the consumer are skipped, see {@link SpotifyResponseCache}.
+     * the response cache is written to disk if all pages were fetched and handed over
+     */
+    public void streamAlbumsFromApi(List<String> artistIds, AlbumPageConsumer<SpotifyAlbum> consumer) {
+        streamAlbumsFromApi(artistIds, this::readAlbumsResponse, consumer);
+        responseCache.flush();
+    }
+
+    /**
+     * same as {@link #streamAlbumsFromApi(List, AlbumPageConsumer)}, but every page is decoded by the given reader.
+     * the reader runs on the fetching threads.
+     * the response cache is not written to disk, consumers that persist the pages after they were handed over
+     * call {@link #flushResponseCache()} once every page was persisted
+     */
+    public <T> void streamAlbumsFromApi(List<String> artistIds, SpotifyPageReader<T> reader, AlbumPageConsumer<T> consumer) {
+        var serializedConsumer = new SerializedAlbumPageConsumer<>(consumer);
+        fetchConcurrently(artistIds, artistId -> {
+            streamAlbumsForArtist(artistId, reader, serializedConsumer, responseCache.isEnabled());
+            return null;
+        });
+    }
+
+    /**
+     * writes the pages that were handled since the last flush to disk
+     */
+    public void flushResponseCache() {
+        responseCache.flush();
+    }
+
+    private List<SpotifyAlbum> getAlbumsForArtist(String artistId) {
+        List<SpotifyAlbum> albums = new ArrayList<>();
+        streamAlbumsForArtist(artistId, this::readAlbumsResponse, (id, page) -> albums.addAll(page), false);
+        return albums;
+    }
+
+    /**
+     * follows the pagination of the albums endpoint until the last page. if a page can not be fetched,
+     * the remaining pages of that artist are skipped. with conditional requests unchanged pages are not
+     * handed to the consumer and a page is only remembered once the consumer reported it as handled
+     */
+    private <T> void streamAlbumsForArtist(String artistId, SpotifyPageReader<T> reader, AlbumPageConsumer<T> consumer, boolean conditional) {
+        try {
+            var page = getAlbumPageFromApi(firstAlbumPageUri(artistId), reader, conditional);
+            while (true) {
+                if (page.changed()) {
+                    if (page.albums() == null || page.albums().isEmpty()) {
+                        break;
+                    }
+                    var url = page.url();
+                    var cacheEntry = page.cacheEntry();
+                    consumer.accept(artistId, page.albums(), () -> {
+                        if (conditional) {
+                            responseCache.put(url, cacheEntry);
+                        }
+                    });
+                } else if (conditional) {
+                    // not modified, the page was handled by an earlier run
+                    responseCache.revalidate(page.url(), page.cacheEntry());
+                }
+                if (page.cacheEntry().next() == null) {
+                    break;
+                }
+                page = getAlbumPageFromApi(URI.create(page.cacheEntry().next()), reader, conditional);
+            }
+        } catch (SpotifyApiException | RestClientException exception) {
+            log.error("could not fetch albums for artist {}: {}", artistId, exception.getMessage());
+            consumer.artistFailed(artistId, exception);
+            return;
+        }
+        consumer.artistCompleted(artistId);
+    }
+
+    private URI firstAlbumPageUri(String artistId) {
+        var includeGroups = configuration.getAlbumIncludeGroups();
+        return UriComponentsBuilder.fromUriString(configuration.getApiUrl() + "/artists/{id}/albums")
+                .queryParamIfPresent("include_groups", Optional.ofNullable(includeGroups).filter(groups -> !groups.isBlank()))
+                .queryParam("limit", Math.clamp(configuration.getAlbumPageSize(), 1, MAX_ALBUM_PAGE_SIZE))
+                .queryParam("offset", 0)
+                .buildAndExpand(artistId)
+                .encode()
+                .toUri();
+    }
+
+    /**
+     * runs the fetch for every input on its own virtual thread, with at most
+     * {@link SpotifyConfiguration#getMaxConcurrentRequests()} fetches in flight.
+     * the results have the same order as the inputs
+     */
+    private <T, R> List<R> fetchConcurrently(List<T> inputs, Function<T, R> fetch) {
+        var permits = new Semaphore(Math.max(1, configuration.getMaxConcurrentRequests()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<R>> futures = inputs.stream()
+                    .map(input -> executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return fetch.apply(input);
+                        } finally {
+                            permits.release();
+                        }
+                    }))
+                    .toList();
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                try {
+                    results.add(awaitResult(future));
+                } catch (RuntimeException exception) {
+                    executor.shutdownNow();
+                    throw exception;
+                }
+            }
+            return results;
+        }
+    }
+
+    private static <R> R awaitResult(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the spotify api", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (exception.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    /**
+     * fetches one page of albums. with conditional requests the validators of the last response are sent and
+     * the body is only parsed if the api answered with new content
+     */
+    private <T> AlbumPage<T> getAlbumPageFromApi(URI pageUri, SpotifyPageReader<T> reader, boolean conditional) {
         var accessToken = spotifyAuthService.getAccessToken();
+        var url = pageUri.toString();
+        var cachedEntry = conditional ? responseCache.get(url) : null;
 
-        var response = restClient.get()
-                .uri("https://api.spotify.com/v1/artists/{id}/albums", artistId)
+        var response = send(() -> restClient.get()
+                .uri(pageUri)
                 .header("Authorization", "Bearer " + accessToken.getToken())
+                .headers(headers -> {
+                    if (cachedEntry != null && cachedEntry.etag() != null) {
+                        headers.set(HttpHeaders.IF_NONE_MATCH, cachedEntry.etag());
+                    }
+                    if (cachedEntry != null && cachedEntry.lastModified() != null) {
+                        headers.set(HttpHeaders.IF_MODIFIED_SINCE, cachedEntry.lastModified());
+                    }
+                })
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, SpotifyService::handleApiError)
-                .toEntity(SpotifyAlbumsResponse.class);
-        return response.getBody();
+                .toEntity(byte[].class));
+        if (cachedEntry != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            return new AlbumPage<>(url, null, false, cachedEntry);
+        }
+        var body = response.getBody() == null ? new byte[0] : response.getBody();
+        var bodyHash = SpotifyResponseCache.hashOf(body);
+        var etag = response.getHeaders().getETag();
+        var lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+        if (cachedEntry != null && bodyHash.equals(cachedEntry.bodyHash())) {
+            // the api ignored the validators but sent the same content as last time
+            return new AlbumPage<>(url, null, false, new SpotifyResponseCache.Entry(etag, lastModified, bodyHash, cachedEntry.next()));
+        }
+        if (body.length == 0) {
+            return new AlbumPage<>(url, null, true, new SpotifyResponseCache.Entry(etag, lastModified, bodyHash, null));
+        }
+        var page = read(reader, body, "the albums page " + url);
+        return new AlbumPage<>(url, page.items(), true, new SpotifyResponseCache.Entry(etag, lastModified, bodyHash, page.next()));
+    }
+
+    /**
+     * sends a request, a slow request may be hedged. every attempt takes its own permit from the rate limiter and
+     * is guarded by the timeouts, the bulkhead and the circuit breaker. a 429 of any attempt is retried as a whole
+     */
+    private <T> T send(Supplier<T> request) {
+        return rateLimiter.retrying(() -> requestHedger.execute(() -> rateLimiter.attempt(() -> callGuard.execute(request))));
+    }
+
+    private static <T> SpotifyPage<T> read(SpotifyPageReader<T> reader, byte[] body, String description) {
+        try {
+            return reader.read(body);
+        } catch (IOException exception) {
+            throw new RestClientException("could not read " + description, exception);
+        }
+    }
+
+    private SpotifyPage<SpotifyArtist> readArtistsResponse(byte[] body) throws IOException {
+        var artistsResponse = objectMapper.readValue(body, SpotifyArtistsResponse.class);
+        return new SpotifyPage<>(artistsResponse.getArtists(), null);
+    }
+
+    private SpotifyPage<SpotifyAlbum> readAlbumsResponse(byte[] body) throws IOException {
+        var albumsResponse = objectMapper.readValue(body, SpotifyAlbumsResponse.class);
+        return new SpotifyPage<>(albumsResponse.getItems(), albumsResponse.getNext());
+    }
+
+    /**
+     * makes sure the consumer is never called by two threads at the same time
+     */
+    private static class SerializedAlbumPageConsumer<T> implements AlbumPageConsumer<T> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AlbumPageConsumer<T> consumer;
+
+        SerializedAlbumPageConsumer(AlbumPageConsumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(String artistId, List<T> albums) {
+            lock.lock();
+            try {
+                consumer.accept(artistId, albums);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void accept(String artistId, List<T> albums, Runnable handled) {
+            lock.lock();
+            try {
+                consumer.accept(artistId, albums, handled);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void artistCompleted(String artistId) {
+            lock.lock();
+            try {
+                consumer.artistCompleted(artistId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void artistFailed(String artistId, RuntimeException exception) {
+            lock.lock();
+            try {
+                consumer.artistFailed(artistId, exception);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param albums     the albums of the page, only set if the page changed
+     * @param changed    false if the page is the same as when it was last handed to the consumer
+     * @param cacheEntry the validators of the page and the url of the next page
+     */
+    private record AlbumPage<T>(String url, List<T> albums, boolean changed, SpotifyResponseCache.Entry cacheEntry) {
     }
 
     private static void handleApiError(HttpRequest request, ClientHttpResponse errorResponse) throws IOException {
+        if (errorResponse.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+            throw new SpotifyRateLimitException(retryAfterOf(errorResponse));
+        }
         SpotifyApiErrorResponse apiError = new ObjectMapper().readValue(errorResponse.getBody(), SpotifyApiErrorResponse.class);
         throw new SpotifyApiException(HttpStatus.resolve(apiError.getError().getStatus()), apiError.getError().getMessage());
     }
+
+    private static Duration retryAfterOf(ClientHttpResponse errorResponse) {
+        var retryAfter = errorResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        try {
+            return retryAfter == null ? DEFAULT_RETRY_AFTER : Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException exception) {
+            // the api only sends seconds, an http date is not expected here
+            return DEFAULT_RETRY_AFTER;
+        }
+    }
 }
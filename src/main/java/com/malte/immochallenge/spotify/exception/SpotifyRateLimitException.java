@@ -0,0 +1,19 @@
+package com.malte.immochallenge.spotify.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+@Getter
+public class SpotifyRateLimitException extends SpotifyApiException {
+    /**
+     * how long the api asked us to wait before sending the next request
+     */
+    Duration retryAfter;
+
+    public SpotifyRateLimitException(Duration retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "rate limit exceeded, retry after " + retryAfter.toSeconds() + " seconds");
+        this.retryAfter = retryAfter;
+    }
+}
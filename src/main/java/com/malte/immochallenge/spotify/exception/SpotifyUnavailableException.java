@@ -0,0 +1,14 @@
+package com.malte.immochallenge.spotify.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * a call to the api was not made or given up because the api is considered unavailable: the circuit breaker
+ * is open, too many calls are stuck, the call took too long or the deadline of the run has passed
+ */
+public class SpotifyUnavailableException extends SpotifyApiException {
+
+    public SpotifyUnavailableException(HttpStatus status, String errorMessage) {
+        super(status, errorMessage);
+    }
+}
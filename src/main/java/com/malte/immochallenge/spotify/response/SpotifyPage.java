@@ -0,0 +1,12 @@
+package com.malte.immochallenge.spotify.response;
+
+import java.util.List;
+
+/**
+ * the decoded items of one api response
+ *
+ * @param items the items of the response, null if the response did not contain any
+ * @param next  the url of the next page, null on the last page
+ */
+public record SpotifyPage<T>(List<T> items, String next) {
+}
@@ -0,0 +1,20 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.ArtistSyncSchedule;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ArtistSyncScheduleRepository extends CrudRepository<ArtistSyncSchedule, String> {
+
+    @Query(value = """
+            SELECT *
+            FROM artist_sync_schedule s
+            WHERE s.spotify_id = ANY(:spotifyIds)
+            """, nativeQuery = true)
+    List<ArtistSyncSchedule> findAllBySpotifyIds(@Param("spotifyIds") String[] spotifyIds);
+}
@@ -0,0 +1,116 @@
+package com.malte.immochallenge.sync;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * one stage of the synchronization pipeline. a fixed number of workers take items from a bounded queue and
+ * process them. {@link #submit(Object)} blocks while the queue is full, so a slow stage slows down the stages
+ * in front of it instead of letting the queue grow. the memory used by a stage therefore only depends on
+ * the capacity of its queue.
+ * if a worker fails, the remaining items are discarded and the failure is thrown by the next
+ * {@link #submit(Object)} or by {@link #close()}
+ */
+@Slf4j
+public class PipelineStage<T> implements AutoCloseable {
+    private static final Object END = new Object();
+
+    private final String name;
+    private final BlockingQueue<Object> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean failureThrown;
+    private boolean closed;
+
+    public PipelineStage(String name, int workerCount, int capacity, Consumer<T> worker) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            workers.add(Thread.ofVirtual()
+                    .name("sync-" + name + "-" + i)
+                    .start(() -> work(worker)));
+        }
+    }
+
+    /**
+     * hands the item to the workers, blocks while the queue is full
+     */
+    public void submit(T item) {
+        throwIfFailed();
+        try {
+            queue.put(item);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the " + name + " stage", exception);
+        }
+    }
+
+    /**
+     * waits until all submitted items are processed and stops the workers
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                queue.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException exception) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the " + name + " stage", exception);
+        }
+        if (!failureThrown) {
+            throwIfFailed();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(Consumer<T> worker) {
+        try {
+            Object item;
+            while ((item = queue.take()) != END) {
+                if (failure.get() != null) {
+                    // keep draining the queue so that submitting threads are not blocked forever
+                    continue;
+                }
+                try {
+                    worker.accept((T) item);
+                } catch (Throwable throwable) {
+                    if (failure.compareAndSet(null, throwable)) {
+                        log.error("the {} stage of the synchronization failed: {}", name, throwable.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void throwIfFailed() {
+        var throwable = failure.get();
+        if (throwable == null) {
+            return;
+        }
+        failureThrown = true;
+        if (throwable instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (throwable instanceof Error error) {
+            throw error;
+        }
+        throw new IllegalStateException(throwable);
+    }
+}
@@ -0,0 +1,82 @@
+package com.malte.immochallenge.sync;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sync")
+@Data
+public class SyncConfiguration {
+
+    /**
+     * the maximum number of artists that are synchronized per run
+     */
+    int batchSize = 500;
+    /**
+     * the number of workers that persist album pages. albums can appear on the pages of several artists,
+     * more than one worker can make two workers insert the same album at the same time
+     */
+    int persistWorkers = 1;
+    /**
+     * how many album pages can wait for the persist workers. the fetchers wait
+     * while the queue is full, so this bounds the memory used by a run
+     */
+    int pipelineQueueCapacity = 16;
+    /**
+     * the key of the postgres advisory lock that guards the synchronization, all replicas have to use the same key
+     */
+    long lockKey = 7_340_001L;
+    /**
+     * the shortest refresh interval of an artist if no refresh tier matches its popularity
+     */
+    Duration defaultTtl = Duration.ofHours(6);
+    /**
+     * upper bound for the refresh interval of artists that keep coming back unchanged
+     */
+    Duration maxTtl = Duration.ofDays(7);
+    /**
+     * popularity based shortest refresh intervals, popular artists should be refreshed more often.
+     * the interval of an artist starts at the ttl of its tier and backs off while the artist does not change
+     */
+    List<RefreshTier> refreshTiers = new ArrayList<>();
+
+    /**
+     * splits the artists between all live replicas instead of letting a single replica synchronize all of them
+     */
+    boolean shardingEnabled = false;
+    /**
+     * the id of this replica in the sync_node table and the sync journal. defaults to the host name and the process id,
+     * so every process on a host has its own id
+     */
+    String nodeId;
+    /**
+     * how often this replica tells the others that it is alive
+     */
+    Duration heartbeatInterval = Duration.ofSeconds(10);
+    /**
+     * replicas without a heartbeat for this long are considered dead
+     */
+    Duration nodeTimeout = Duration.ofSeconds(30);
+    /**
+     * how often every replica is placed on the hash ring, more virtual nodes spread the artists more evenly
+     */
+    int virtualNodesPerNode = 100;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RefreshTier {
+        /**
+         * the tier applies to all artists with at least this popularity
+         */
+        int minPopularity;
+        Duration ttl;
+    }
+}
@@ -0,0 +1,76 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncRun;
+import com.malte.immochallenge.sync.model.SyncRunStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * persists a journal entry for every synchronization run
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SyncJournal {
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    private final SyncRunRepository syncRunRepository;
+    private final SyncMembership syncMembership;
+
+    /**
+     * starts the journal entry of a new run. runs that are still marked as running on this node or on a node
+     * without a live heartbeat were interrupted by a crash or a deploy. the artists they did not finish are
+     * still due in the artist_sync_schedule, so the new run resumes them and references the interrupted run
+     */
+    public SyncRunRecorder start(List<String> plannedArtistIds, LocalDateTime started) {
+        var otherLiveNodeIds = syncMembership.otherLiveNodeIds();
+        var interruptedRuns = syncRunRepository.findByStatus(SyncRunStatus.RUNNING).stream()
+                .filter(run -> !otherLiveNodeIds.contains(run.getNodeId()))
+                .toList();
+        interruptedRuns.forEach(run -> run.setStatus(SyncRunStatus.INTERRUPTED));
+        if (!interruptedRuns.isEmpty()) {
+            syncRunRepository.saveAll(interruptedRuns);
+            log.warn("resuming {} interrupted synchronization runs", interruptedRuns.size());
+        }
+        var run = syncRunRepository.save(SyncRun.builder()
+                .nodeId(syncMembership.getNodeId())
+                .status(SyncRunStatus.RUNNING)
+                .started(started)
+                .resumedRunId(interruptedRuns.stream().map(SyncRun::getId).max(Comparator.naturalOrder()).orElse(null))
+                .plannedArtists(plannedArtistIds.size())
+                .build());
+        return new SyncRunRecorder(run, syncRunRepository::save);
+    }
+
+    public SyncRun finish(SyncRunRecorder recorder) {
+        return complete(recorder, SyncRunStatus.SUCCEEDED, null);
+    }
+
+    public SyncRun fail(SyncRunRecorder recorder, RuntimeException exception) {
+        return complete(recorder, SyncRunStatus.FAILED, exception.getMessage());
+    }
+
+    public List<SyncRun> getRecentRuns(int limit) {
+        return syncRunRepository.findByOrderByStartedDesc(Limit.of(limit));
+    }
+
+    private SyncRun complete(SyncRunRecorder recorder, SyncRunStatus status, String errorMessage) {
+        var run = recorder.snapshot();
+        run.setStatus(status);
+        run.setFinished(LocalDateTime.now());
+        if (errorMessage != null && errorMessage.length() > MAX_ERROR_MESSAGE_LENGTH) {
+            errorMessage = errorMessage.substring(0, MAX_ERROR_MESSAGE_LENGTH);
+        }
+        run.setErrorMessage(errorMessage);
+        log.info("synchronization run {} {} after {} of {} artists: {} inserted, {} updated, {} unchanged, {} failed",
+                run.getId(), status, run.getProcessedArtists(), run.getPlannedArtists(), run.getInserted(),
+                run.getUpdated(), run.getUnchanged(), run.getFailedArtists());
+        return syncRunRepository.save(run);
+    }
+}
@@ -0,0 +1,76 @@
+package com.malte.immochallenge.sync;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * makes sure that at most one synchronization runs in the whole cluster. a local flag skips ticks while the
+ * previous run on this node is still in progress and a postgres session level advisory lock skips ticks while
+ * another node is synchronizing. the advisory lock is released by postgres if the node dies.
+ * with sharding every replica only synchronizes its own artists, so only the local flag is used
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SyncLock {
+    private final JdbcTemplate jdbcTemplate;
+    private final SyncConfiguration syncConfiguration;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * runs the task if no other synchronization is running on this node or any other node
+     *
+     * @return true if the task was run, false if it was skipped
+     */
+    public boolean runExclusively(Runnable task) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("skipping synchronization because the previous one is still running");
+            return false;
+        }
+        try {
+            if (syncConfiguration.isShardingEnabled()) {
+                task.run();
+                return true;
+            }
+            // the advisory lock belongs to the session, so the same connection has to be used for lock and unlock
+            return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                if (!tryLock(connection)) {
+                    log.debug("skipping synchronization because another node is synchronizing");
+                    return false;
+                }
+                try {
+                    task.run();
+                    return true;
+                } finally {
+                    unlock(connection);
+                }
+            }));
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (var statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, syncConfiguration.getLockKey());
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (var statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, syncConfiguration.getLockKey());
+            statement.execute();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.malte.immochallenge.sync;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * splits the configured artists between all live replicas. every replica sends a heartbeat to the sync_node
+ * table and owns the artists that the {@link ConsistentHashRing} of all live replicas assigns to it. when a
+ * replica joins or leaves, only the artists of that replica move and the next run picks up the new slices.
+ * until every replica saw the change two of them can own the same artist, the artist and album services lock
+ * every spotify id they write and the spotify ids are unique, so this does not create duplicate rows
+ */
+@Slf4j
+@Service
+public class SyncMembership {
+    private final SyncConfiguration syncConfiguration;
+    private final SyncNodeRepository syncNodeRepository;
+
+    @Getter
+    private final String nodeId;
+
+    public SyncMembership(SyncConfiguration syncConfiguration, SyncNodeRepository syncNodeRepository) {
+        this.syncConfiguration = syncConfiguration;
+        this.syncNodeRepository = syncNodeRepository;
+        var configuredNodeId = syncConfiguration.getNodeId();
+        this.nodeId = configuredNodeId == null || configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${sync.heartbeat-interval:PT10S}")
+    public void heartbeat() {
+        if (!syncConfiguration.isShardingEnabled()) {
+            return;
+        }
+        syncNodeRepository.heartbeat(nodeId);
+        var removedNodes = syncNodeRepository.deleteDeadNodes(syncConfiguration.getNodeTimeout().toMillis());
+        if (removedNodes > 0) {
+            log.info("removed {} sync nodes without heartbeat", removedNodes);
+        }
+    }
+
+    /**
+     * leaves the cluster on shutdown, so the other replicas take over the artists of this one right away
+     */
+    @PreDestroy
+    public void leave() {
+        if (syncConfiguration.isShardingEnabled()) {
+            syncNodeRepository.deleteById(nodeId);
+        }
+    }
+
+    /**
+     * returns the artists this replica is responsible for, all artists if sharding is disabled
+     */
+    public List<String> ownedArtistIds(List<String> artistIds) {
+        if (!syncConfiguration.isShardingEnabled()) {
+            return artistIds;
+        }
+        var liveNodeIds = new TreeSet<>(syncNodeRepository.findAliveNodeIds(syncConfiguration.getNodeTimeout().toMillis()));
+        // this node keeps working even if its last heartbeat could not be written
+        liveNodeIds.add(nodeId);
+        var ring = new ConsistentHashRing(liveNodeIds, syncConfiguration.getVirtualNodesPerNode());
+        var ownedArtistIds = artistIds.stream()
+                .filter(artistId -> nodeId.equals(ring.nodeFor(artistId)))
+                .toList();
+        log.debug("node {} owns {} of {} artists, live nodes: {}", nodeId, ownedArtistIds.size(), artistIds.size(), liveNodeIds.size());
+        return ownedArtistIds;
+    }
+
+    /**
+     * returns the other replicas that may be synchronizing right now. without sharding the sync lock keeps every
+     * other node from synchronizing, so there are none
+     */
+    public Set<String> otherLiveNodeIds() {
+        if (!syncConfiguration.isShardingEnabled()) {
+            return Set.of();
+        }
+        var liveNodeIds = new HashSet<>(syncNodeRepository.findAliveNodeIds(syncConfiguration.getNodeTimeout().toMillis()));
+        liveNodeIds.remove(nodeId);
+        return liveNodeIds;
+    }
+
+    /**
+     * the host name with the process id, so two replicas on the same host do not share an id. a restarted replica
+     * gets a new id, the runs it left behind are interrupted because their node has no live heartbeat anymore.
+     * a random id is only used if the host name can not be resolved
+     */
+    private static String defaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        } catch (UnknownHostException exception) {
+            log.warn("could not resolve the host name, using a random node id: {}", exception.getMessage());
+            return UUID.randomUUID().toString();
+        }
+    }
+}
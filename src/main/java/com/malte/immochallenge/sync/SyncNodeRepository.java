@@ -0,0 +1,40 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncNode;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * the heartbeats are written and compared with the clock of the database in utc, so the clocks and time zones
+ * of the replicas do not decide which of them are alive
+ */
+@Repository
+public interface SyncNodeRepository extends CrudRepository<SyncNode, String> {
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO sync_node (node_id, started, last_heartbeat)
+            VALUES (:nodeId, timezone('UTC', now()), timezone('UTC', now()))
+            ON CONFLICT (node_id) DO UPDATE SET last_heartbeat = timezone('UTC', now())
+            """, nativeQuery = true)
+    void heartbeat(@Param("nodeId") String nodeId);
+
+    @Query(value = """
+            SELECT node_id
+            FROM sync_node
+            WHERE last_heartbeat >= timezone('UTC', now()) - :timeoutMillis * interval '1 millisecond'
+            """, nativeQuery = true)
+    List<String> findAliveNodeIds(@Param("timeoutMillis") long timeoutMillis);
+
+    @Modifying
+    @Query(value = """
+            DELETE FROM sync_node
+            WHERE last_heartbeat < timezone('UTC', now()) - :timeoutMillis * interval '1 millisecond'
+            """, nativeQuery = true)
+    int deleteDeadNodes(@Param("timeoutMillis") long timeoutMillis);
+}
@@ -0,0 +1,121 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.spotify.SpotifyConfiguration;
+import com.malte.immochallenge.sync.model.ArtistSyncSchedule;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * decides which of the configured artists have to be synchronized in the current run and adapts the refresh
+ * interval of every artist to how often it actually changes
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SyncPlanner {
+    private final SpotifyConfiguration spotifyConfiguration;
+    private final SyncConfiguration syncConfiguration;
+    private final ArtistSyncScheduleRepository artistSyncScheduleRepository;
+    private final SyncMembership syncMembership;
+
+    /**
+     * returns the configured artists of this replica that were never synchronized or whose next synchronization is due.
+     * the artists that are due the longest come first and at most {@link SyncConfiguration#getBatchSize()}
+     * artists are returned
+     */
+    public List<String> getArtistIdsDueForSync(LocalDateTime now) {
+        var artistIds = syncMembership.ownedArtistIds(spotifyConfiguration.getArtistIds().stream().distinct().toList());
+        if (artistIds.isEmpty()) {
+            return List.of();
+        }
+        var nextSyncDueBySpotifyId = artistSyncScheduleRepository.findAllBySpotifyIds(artistIds.toArray(String[]::new)).stream()
+                .collect(toMap(ArtistSyncSchedule::getSpotifyId, ArtistSyncSchedule::getNextSyncDue, (first, second) -> first));
+        return artistIds.stream()
+                .map(artistId -> new DueArtist(artistId, nextSyncDueBySpotifyId.getOrDefault(artistId, LocalDateTime.MIN)))
+                .filter(dueArtist -> !dueArtist.dueSince().isAfter(now))
+                .sorted(Comparator.comparing(DueArtist::dueSince))
+                .limit(Math.max(1, syncConfiguration.getBatchSize()))
+                .map(DueArtist::spotifyId)
+                .toList();
+    }
+
+    /**
+     * schedules the next synchronization of the given artists. the refresh interval of an artist doubles when
+     * neither the artist nor its albums changed and halves when something changed, but it never drops below
+     * the ttl of its popularity tier and never exceeds {@link SyncConfiguration#getMaxTtl()}
+     *
+     * @param artistIds        the artists that were synchronized
+     * @param artists          the artists returned by the api, used to find the popularity tier
+     * @param changedArtistIds the artists where the artist itself or one of its albums changed
+     */
+    @Transactional
+    public void recordSynchronization(List<String> artistIds, Collection<Artist> artists, Set<String> changedArtistIds,
+                                      LocalDateTime synchronizationDate) {
+        if (artistIds.isEmpty()) {
+            return;
+        }
+        var artistsBySpotifyId = artists.stream()
+                .collect(toMap(Artist::getSpotifyId, identity(), (first, second) -> first));
+        var schedulesBySpotifyId = artistSyncScheduleRepository.findAllBySpotifyIds(artistIds.toArray(String[]::new)).stream()
+                .collect(toMap(ArtistSyncSchedule::getSpotifyId, identity(), (first, second) -> first));
+
+        List<ArtistSyncSchedule> schedulesToSave = new ArrayList<>();
+        for (String artistId : artistIds) {
+            var artist = artistsBySpotifyId.get(artistId);
+            var minimumInterval = artist == null ? syncConfiguration.getDefaultTtl() : ttlFor(artist.getPopularity());
+            var changed = changedArtistIds.contains(artistId);
+            var schedule = schedulesBySpotifyId.getOrDefault(artistId, ArtistSyncSchedule.builder().spotifyId(artistId).build());
+            var currentInterval = schedulesBySpotifyId.containsKey(artistId) ? Duration.ofSeconds(schedule.getRefreshIntervalSeconds()) : null;
+            var refreshInterval = nextRefreshInterval(currentInterval, minimumInterval, changed);
+            log.debug("artist: {} changed: {}, next refresh in {}", artistId, changed, refreshInterval);
+            schedulesToSave.add(schedule.toBuilder()
+                    .refreshIntervalSeconds(refreshInterval.toSeconds())
+                    .nextSyncDue(synchronizationDate.plus(refreshInterval))
+                    .unchangedCount(changed ? 0 : schedule.getUnchangedCount() + 1)
+                    .lastChanged(changed ? synchronizationDate : schedule.getLastChanged())
+                    .lastSynchronized(synchronizationDate)
+                    .build());
+        }
+        artistSyncScheduleRepository.saveAll(schedulesToSave);
+    }
+
+    Duration nextRefreshInterval(Duration currentInterval, Duration minimumInterval, boolean changed) {
+        if (currentInterval == null) {
+            return minimumInterval;
+        }
+        var nextInterval = changed ? currentInterval.dividedBy(2) : currentInterval.multipliedBy(2);
+        var maximumInterval = syncConfiguration.getMaxTtl().compareTo(minimumInterval) > 0 ? syncConfiguration.getMaxTtl() : minimumInterval;
+        if (nextInterval.compareTo(minimumInterval) < 0) {
+            return minimumInterval;
+        }
+        if (nextInterval.compareTo(maximumInterval) > 0) {
+            return maximumInterval;
+        }
+        return nextInterval;
+    }
+
+    Duration ttlFor(int popularity) {
+        return syncConfiguration.getRefreshTiers().stream()
+                .filter(tier -> popularity >= tier.getMinPopularity())
+                .max(Comparator.comparingInt(SyncConfiguration.RefreshTier::getMinPopularity))
+                .map(SyncConfiguration.RefreshTier::getTtl)
+                .orElse(syncConfiguration.getDefaultTtl());
+    }
+
+    private record DueArtist(String spotifyId, LocalDateTime dueSince) {
+    }
+}
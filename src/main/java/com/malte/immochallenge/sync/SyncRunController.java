@@ -0,0 +1,25 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncRun;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("sync")
+@RequiredArgsConstructor
+public class SyncRunController {
+    private static final int MAX_RUNS = 200;
+
+    private final SyncJournal syncJournal;
+
+    @GetMapping("runs")
+    public ResponseEntity<List<SyncRun>> getRecentRuns(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(syncJournal.getRecentRuns(Math.clamp(limit, 1, MAX_RUNS)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.model.SyncResult;
+import com.malte.immochallenge.sync.model.SyncRun;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * collects the timings and counts of a running synchronization. can be used from multiple threads, every time
+ * an artist is done the current state is written to the journal. the journal only shows the progress, an
+ * interrupted run is resumed from the artist_sync_schedule, which is updated as soon as an artist is done
+ */
+public class SyncRunRecorder {
+
+    public enum Phase {
+        FETCH,
+        MAP,
+        PERSIST
+    }
+
+    private final UnaryOperator<SyncRun> journal;
+    private final Set<String> completedArtistIds = new HashSet<>();
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+    private SyncRun run;
+
+    public SyncRunRecorder(SyncRun run, UnaryOperator<SyncRun> journal) {
+        this.run = run;
+        this.journal = journal;
+    }
+
+    /**
+     * runs the step and adds its duration to the phase
+     */
+    public <T> T measure(Phase phase, Supplier<T> step) {
+        var started = System.nanoTime();
+        try {
+            return step.get();
+        } finally {
+            addNanos(phase, System.nanoTime() - started);
+        }
+    }
+
+    public synchronized void addNanos(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += Math.max(0, nanos);
+    }
+
+    public synchronized long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public synchronized void record(SyncResult result) {
+        run.setInserted(run.getInserted() + result.insertedSpotifyIds().size());
+        run.setUpdated(run.getUpdated() + result.updatedSpotifyIds().size());
+        run.setUnchanged(run.getUnchanged() + result.unchangedSpotifyIds().size());
+        run.setSkippedModified(run.getSkippedModified() + result.modifiedSpotifyIds().size());
+    }
+
+    /**
+     * whether an artist or album was inserted or updated so far
+     */
+    public synchronized boolean hasChanges() {
+        return run.getInserted() + run.getUpdated() > 0;
+    }
+
+    /**
+     * marks the artist as fully processed
+     */
+    public synchronized void artistCompleted(String artistId) {
+        if (!completedArtistIds.add(artistId)) {
+            return;
+        }
+        run.setProcessedArtists(run.getProcessedArtists() + 1);
+        write();
+    }
+
+    public synchronized void artistFailed(String artistId) {
+        if (!completedArtistIds.add(artistId)) {
+            return;
+        }
+        // failed artists stay due for the next run
+        run.setFailedArtists(run.getFailedArtists() + 1);
+        write();
+    }
+
+    public synchronized SyncRun snapshot() {
+        run.setFetchMillis(TimeUnit.NANOSECONDS.toMillis(getNanos(Phase.FETCH)));
+        run.setMapMillis(TimeUnit.NANOSECONDS.toMillis(getNanos(Phase.MAP)));
+        run.setPersistMillis(TimeUnit.NANOSECONDS.toMillis(getNanos(Phase.PERSIST)));
+        return run.toBuilder().build();
+    }
+
+    /**
+     * writes the current state to the journal
+     */
+    synchronized SyncRun write() {
+        run = journal.apply(snapshot());
+        return run.toBuilder().build();
+    }
+}
@@ -0,0 +1,17 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncRun;
+import com.malte.immochallenge.sync.model.SyncRunStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SyncRunRepository extends CrudRepository<SyncRun, Long> {
+
+    List<SyncRun> findByOrderByStartedDesc(Limit limit);
+
+    List<SyncRun> findByStatus(SyncRunStatus status);
+}
@@ -0,0 +1,68 @@
+package com.malte.immochallenge.sync.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Transient;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * the persisted synchronization state of a configured artist. the id is the spotify id of the artist, so the
+ * schedule tells spring data itself whether it is new, otherwise every new schedule would be looked up before the insert
+ */
+@Entity
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class ArtistSyncSchedule implements Persistable<String> {
+    @Id
+    String spotifyId;
+    /**
+     * the current refresh interval, it grows while the artist keeps coming back unchanged
+     */
+    long refreshIntervalSeconds;
+    /**
+     * the date time when this artist has to be synchronized next
+     */
+    LocalDateTime nextSyncDue;
+    /**
+     * how many synchronizations in a row did not find any change
+     */
+    int unchangedCount;
+    /**
+     * the date time of the last synchronization that found a change of the artist or its albums
+     */
+    LocalDateTime lastChanged;
+    LocalDateTime lastSynchronized;
+    /**
+     * whether the schedule was loaded from or written to the database, copies made with the builder keep it
+     */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    boolean persisted;
+
+    @Override
+    public String getId() {
+        return spotifyId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+}
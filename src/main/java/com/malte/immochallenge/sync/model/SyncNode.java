@@ -0,0 +1,29 @@
+package com.malte.immochallenge.sync.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * a replica that takes part in the synchronization
+ */
+@Entity
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class SyncNode {
+    @Id
+    String nodeId;
+    LocalDateTime started;
+    /**
+     * nodes that did not send a heartbeat for {@link com.malte.immochallenge.sync.SyncConfiguration#getNodeTimeout()}
+     * are considered dead and their artists are taken over by the remaining nodes
+     */
+    LocalDateTime lastHeartbeat;
+}
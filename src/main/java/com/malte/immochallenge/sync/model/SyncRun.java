@@ -0,0 +1,54 @@
+package com.malte.immochallenge.sync.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * the journal entry of one synchronization run
+ */
+@Entity
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class SyncRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+    String nodeId;
+    @Enumerated(EnumType.STRING)
+    SyncRunStatus status;
+    LocalDateTime started;
+    LocalDateTime finished;
+    /**
+     * the interrupted run whose remaining artists this run picked up
+     */
+    Long resumedRunId;
+
+    int plannedArtists;
+    /**
+     * artists whose artist data and all album pages were persisted
+     */
+    int processedArtists;
+    int failedArtists;
+
+    /**
+     * time spent fetching from the api, without the time the fetchers waited for a full pipeline.
+     * map and persist are summed up over all their workers
+     */
+    long fetchMillis;
+    long mapMillis;
+    long persistMillis;
+
+    int inserted;
+    int updated;
+    int unchanged;
+    int skippedModified;
+
+    String errorMessage;
+}
@@ -0,0 +1,11 @@
+package com.malte.immochallenge.sync.model;
+
+public enum SyncRunStatus {
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    /**
+     * the node stopped while the run was in progress, the next run of the node resumes it
+     */
+    INTERRUPTED
+}
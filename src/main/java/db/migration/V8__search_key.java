@@ -0,0 +1,57 @@
+package db.migration;
+
+import com.malte.immochallenge.model.SearchKeyNormalizer;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * adds the search key to artists and albums and fills it for the existing rows. the keys are computed with the
+ * same {@link SearchKeyNormalizer} the application uses when it writes a name, postgres could not fold them the
+ * same way. the trigram indexes move from the lowercase name to the search key
+ */
+public class V8__search_key extends BaseJavaMigration {
+    private static final int BATCH_SIZE = 1000;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        var connection = context.getConnection();
+        for (String table : List.of("artist", "album")) {
+            execute(connection, "ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS search_key text");
+            backfill(connection, table);
+            execute(connection, "DROP INDEX IF EXISTS idx_" + table + "_name_trgm");
+            execute(connection, "CREATE INDEX idx_" + table + "_search_key_trgm ON " + table + " USING gin (search_key gin_trgm_ops)");
+        }
+    }
+
+    /**
+     * streams the names and writes the keys back in batches, so the rows are never all in memory at once
+     */
+    private static void backfill(Connection connection, String table) throws SQLException {
+        try (var select = connection.createStatement();
+             var update = connection.prepareStatement("UPDATE " + table + " SET search_key = ? WHERE id = ?")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (var rows = select.executeQuery("SELECT id, name FROM " + table)) {
+                var batched = 0;
+                while (rows.next()) {
+                    update.setString(1, SearchKeyNormalizer.normalize(rows.getString("name")));
+                    update.setLong(2, rows.getLong("id"));
+                    update.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        update.executeBatch();
+                    }
+                }
+                update.executeBatch();
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
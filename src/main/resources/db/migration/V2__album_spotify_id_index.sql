@@ -0,0 +1 @@
+CREATE INDEX idx_album_spotify_id ON album(spotify_id);
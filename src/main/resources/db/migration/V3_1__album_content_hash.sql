@@ -0,0 +1 @@
+ALTER TABLE album ADD COLUMN content_hash character varying(64) NULL;
@@ -0,0 +1,3 @@
+ALTER TABLE artist ADD COLUMN content_hash character varying(64) NULL;
+
+CREATE INDEX idx_artist_spotify_id ON artist(spotify_id);
@@ -0,0 +1,8 @@
+CREATE TABLE artist_sync_schedule (
+    spotify_id character varying(255) NOT NULL PRIMARY KEY,
+    refresh_interval_seconds bigint NOT NULL,
+    next_sync_due timestamp(6) without time zone NOT NULL,
+    unchanged_count integer NOT NULL,
+    last_changed timestamp(6) without time zone NULL,
+    last_synchronized timestamp(6) without time zone NULL
+  );
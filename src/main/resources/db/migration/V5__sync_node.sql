@@ -0,0 +1,5 @@
+CREATE TABLE sync_node (
+    node_id character varying(255) NOT NULL PRIMARY KEY,
+    started timestamp(6) without time zone NOT NULL,
+    last_heartbeat timestamp(6) without time zone NOT NULL
+  );
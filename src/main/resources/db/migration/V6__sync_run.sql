@@ -0,0 +1,21 @@
+CREATE TABLE sync_run (
+    id bigint NOT NULL GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    node_id character varying(255) NULL,
+    status character varying(32) NOT NULL,
+    started timestamp(6) without time zone NOT NULL,
+    finished timestamp(6) without time zone NULL,
+    resumed_run_id bigint NULL,
+    planned_artists integer NOT NULL,
+    processed_artists integer NOT NULL,
+    failed_artists integer NOT NULL,
+    fetch_millis bigint NOT NULL,
+    map_millis bigint NOT NULL,
+    persist_millis bigint NOT NULL,
+    inserted integer NOT NULL,
+    updated integer NOT NULL,
+    unchanged integer NOT NULL,
+    skipped_modified integer NOT NULL,
+    error_message character varying(1024) NULL
+  );
+
+CREATE INDEX idx_sync_run_started ON sync_run(started);
@@ -0,0 +1,28 @@
+CREATE TEMPORARY TABLE duplicate_artist ON COMMIT DROP AS
+SELECT id
+FROM (
+    SELECT id, row_number() OVER (PARTITION BY spotify_id ORDER BY last_modified IS NULL, id) AS position
+    FROM artist
+) ranked
+WHERE position > 1;
+
+DELETE FROM artist_images WHERE artist_id IN (SELECT id FROM duplicate_artist);
+DELETE FROM artist WHERE id IN (SELECT id FROM duplicate_artist);
+
+CREATE TEMPORARY TABLE duplicate_album ON COMMIT DROP AS
+SELECT id
+FROM (
+    SELECT id, row_number() OVER (PARTITION BY spotify_id ORDER BY last_modified IS NULL, id) AS position
+    FROM album
+) ranked
+WHERE position > 1;
+
+DELETE FROM album_images WHERE album_id IN (SELECT id FROM duplicate_album);
+DELETE FROM album_artists WHERE album_id IN (SELECT id FROM duplicate_album);
+DELETE FROM album WHERE id IN (SELECT id FROM duplicate_album);
+
+DROP INDEX idx_artist_spotify_id;
+CREATE UNIQUE INDEX idx_artist_spotify_id ON artist(spotify_id);
+
+DROP INDEX idx_album_spotify_id;
+CREATE UNIQUE INDEX idx_album_spotify_id ON album(spotify_id);
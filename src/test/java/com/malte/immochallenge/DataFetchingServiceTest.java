@@ -1,26 +1,46 @@
 package com.malte.immochallenge;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.malte.immochallenge.album.AlbumService;
 import com.malte.immochallenge.album.model.Album;
 import com.malte.immochallenge.album.model.SimplifiedArtist;
 import com.malte.immochallenge.artist.ArtistService;
 import com.malte.immochallenge.artist.model.Artist;
 import com.malte.immochallenge.model.Image;
+import com.malte.immochallenge.model.SyncResult;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.spotify.AlbumPageConsumer;
+import com.malte.immochallenge.spotify.SpotifyCallGuard;
+import com.malte.immochallenge.spotify.SpotifyPageReader;
 import com.malte.immochallenge.spotify.SpotifyService;
 import com.malte.immochallenge.spotify.exception.SpotifyApiException;
 import com.malte.immochallenge.spotify.model.*;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyArtistsResponse;
+import com.malte.immochallenge.sync.SyncConfiguration;
+import com.malte.immochallenge.sync.SyncJournal;
+import com.malte.immochallenge.sync.SyncLock;
+import com.malte.immochallenge.sync.SyncPlanner;
+import com.malte.immochallenge.sync.SyncRunRecorder;
+import com.malte.immochallenge.sync.model.SyncRun;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class DataFetchingServiceTest {
@@ -28,24 +48,57 @@ class DataFetchingServiceTest {
     @Mock
     SpotifyService spotifyService;
     @Mock
+    SpotifyCallGuard spotifyCallGuard;
+    @Mock
     ArtistService artistService;
     @Mock
     AlbumService albumService;
+    @Mock
+    SyncPlanner syncPlanner;
+    @Mock
+    SyncLock syncLock;
+    @Mock
+    SyncJournal syncJournal;
+    @Mock
+    SyncConfiguration syncConfiguration;
+    @Mock
+    AutocompleteIndex autocompleteIndex;
     @InjectMocks
     DataFetchingService dataFetchingService;
 
+    ObjectMapper mapper = new ObjectMapper();
+
     @Captor
     ArgumentCaptor<List<Artist>> artistCaptor;
     @Captor
     ArgumentCaptor<List<Album>> albumCaptor;
 
+    @Captor
+    ArgumentCaptor<SyncRunRecorder> recorderCaptor;
+
+    @BeforeEach
+    void runWithoutLock() {
+        lenient().when(syncLock.runExclusively(any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return true;
+        });
+        lenient().when(syncJournal.start(any(), any())).thenAnswer(invocation ->
+                new SyncRunRecorder(SyncRun.builder().build(), UnaryOperator.identity()));
+    }
+
 
     @Test
     public void getSpotifyDataPeriodically1() {
-        Mockito.when(spotifyService.getDataFromSpotify()).thenReturn(SpotifyApiResponse.builder()
-                .artists(List.of(getSpotifyArtist()))
-                .albums(List.of(getSpotifyAlbum()))
-                .build());
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenAnswer(invocation -> readArtists(invocation, getSpotifyArtist()));
+        Mockito.when(artistService.handleNewArtists(any(), any())).thenReturn(new SyncResult(List.of("id"), List.of(), List.of(), List.of()));
+        Mockito.when(albumService.handleNewAlbums(any(), any())).thenReturn(SyncResult.empty());
+        doAnswer(invocation -> {
+            AlbumPageConsumer<Album> consumer = invocation.getArgument(2);
+            consumer.accept("id", readAlbums(invocation, getSpotifyAlbum()));
+            consumer.artistCompleted("id");
+            return null;
+        }).when(spotifyService).streamAlbumsFromApi(eq(List.of("id")), any(), any());
 
         dataFetchingService.getSpotifyDataPeriodically();
 
@@ -94,16 +147,143 @@ class DataFetchingServiceTest {
                 .externalUrl("externalUrl")
                 .build());
 
-
+        verify(syncPlanner).recordSynchronization(eq(List.of("id")), eq(artistCaptor.getValue()), eq(Set.of("id")), any());
+        verify(syncJournal).finish(recorderCaptor.capture());
+        var run = recorderCaptor.getValue().snapshot();
+        assertThat(run.getInserted()).isEqualTo(1);
+        assertThat(run.getProcessedArtists()).isEqualTo(1);
+        verify(autocompleteIndex).rebuild();
     }
 
     @Test
     public void getSpotifyDataPeriodically2() {
-        Mockito.when(spotifyService.getDataFromSpotify()).thenThrow(new SpotifyApiException(HttpStatus.BAD_REQUEST, "Bad Request"));
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenThrow(new SpotifyApiException(HttpStatus.BAD_REQUEST, "Bad Request"));
 
         dataFetchingService.getSpotifyDataPeriodically();
 
         verify(artistService, never()).handleNewArtists(artistCaptor.capture(), any());
+        verify(albumService, never()).handleNewAlbums(albumCaptor.capture(), any());
+        verify(syncPlanner, never()).recordSynchronization(any(), any(), any(), any());
+        verify(syncJournal).fail(any(), any(SpotifyApiException.class));
+        verify(syncJournal, never()).finish(any());
+        verify(autocompleteIndex, never()).rebuild();
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically3() {
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenAnswer(invocation -> readArtists(invocation));
+        Mockito.when(artistService.handleNewArtists(any(), any())).thenReturn(SyncResult.empty());
+        Mockito.when(albumService.handleNewAlbums(any(), any()))
+                .thenReturn(SyncResult.empty())
+                .thenReturn(new SyncResult(List.of(), List.of("spotifyId"), List.of(), List.of()));
+        doAnswer(invocation -> {
+            AlbumPageConsumer<Album> consumer = invocation.getArgument(2);
+            consumer.accept("id", readAlbums(invocation, getSpotifyAlbum()));
+            consumer.accept("id", readAlbums(invocation, getSpotifyAlbum(), getSpotifyAlbum()));
+            consumer.artistCompleted("id");
+            return null;
+        }).when(spotifyService).streamAlbumsFromApi(eq(List.of("id")), any(), any());
+
+        dataFetchingService.getSpotifyDataPeriodically();
+
+        verify(albumService, times(2)).handleNewAlbums(albumCaptor.capture(), any());
+        assertThat(albumCaptor.getAllValues().get(0)).hasSize(1);
+        assertThat(albumCaptor.getAllValues().get(1)).hasSize(2);
+        verify(syncPlanner).recordSynchronization(eq(List.of("id")), eq(List.of()), eq(Set.of("id")), any());
+        verify(spotifyService).flushResponseCache();
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically5() {
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenAnswer(invocation -> readArtists(invocation, getSpotifyArtist()));
+        Mockito.when(artistService.handleNewArtists(any(), any())).thenReturn(new SyncResult(List.of(), List.of(), List.of("id"), List.of()));
+        Mockito.when(albumService.handleNewAlbums(any(), any())).thenReturn(new SyncResult(List.of(), List.of(), List.of("spotifyId"), List.of()));
+        doAnswer(invocation -> {
+            AlbumPageConsumer<Album> consumer = invocation.getArgument(2);
+            consumer.accept("id", readAlbums(invocation, getSpotifyAlbum()));
+            consumer.artistCompleted("id");
+            return null;
+        }).when(spotifyService).streamAlbumsFromApi(eq(List.of("id")), any(), any());
+
+        dataFetchingService.getSpotifyDataPeriodically();
+
+        verify(syncPlanner).recordSynchronization(eq(List.of("id")), any(), eq(Set.of()), any());
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically4() {
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of());
+
+        dataFetchingService.getSpotifyDataPeriodically();
+
+        verifyNoInteractions(spotifyService, artistService, albumService);
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically6() {
+        doReturn(false).when(syncLock).runExclusively(any());
+
+        dataFetchingService.getSpotifyDataPeriodically();
+
+        verifyNoInteractions(syncPlanner, spotifyService, artistService, albumService);
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically7() {
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenAnswer(invocation -> readArtists(invocation, getSpotifyArtist()));
+        Mockito.when(artistService.handleNewArtists(any(), any())).thenReturn(SyncResult.empty());
+        doAnswer(invocation -> {
+            invocation.<AlbumPageConsumer<Album>>getArgument(2).artistFailed("id", new SpotifyApiException(HttpStatus.BAD_REQUEST, "Bad Request"));
+            return null;
+        }).when(spotifyService).streamAlbumsFromApi(eq(List.of("id")), any(), any());
+
+        dataFetchingService.getSpotifyDataPeriodically();
+
+        verify(syncPlanner, never()).recordSynchronization(any(), any(), any(), any());
+        verify(syncJournal).finish(recorderCaptor.capture());
+        assertThat(recorderCaptor.getValue().snapshot().getFailedArtists()).isEqualTo(1);
+    }
+
+    @Test
+    public void getSpotifyDataPeriodically8() {
+        Mockito.when(syncPlanner.getArtistIdsDueForSync(any())).thenReturn(List.of("id"));
+        Mockito.when(spotifyService.getArtistFromApi(eq(List.of("id")), any())).thenAnswer(invocation -> readArtists(invocation, getSpotifyArtist()));
+        Mockito.when(artistService.handleNewArtists(any(), any())).thenReturn(SyncResult.empty());
+        Mockito.when(albumService.handleNewAlbums(any(), any())).thenThrow(new IllegalStateException("persisting failed"));
+        var handled = new AtomicBoolean();
+        doAnswer(invocation -> {
+            AlbumPageConsumer<Album> consumer = invocation.getArgument(2);
+            consumer.accept("id", readAlbums(invocation, getSpotifyAlbum()), () -> handled.set(true));
+            consumer.artistCompleted("id");
+            return null;
+        }).when(spotifyService).streamAlbumsFromApi(eq(List.of("id")), any(), any());
+
+        assertThatThrownBy(() -> dataFetchingService.getSpotifyDataPeriodically()).hasMessage("persisting failed");
+
+        // the page is fetched and handed over again on the next run
+        assertThat(handled).isFalse();
+        verify(spotifyService, never()).flushResponseCache();
+        verify(syncJournal).fail(any(), any());
+    }
+
+    /**
+     * decodes the response with the reader the service passed, like the spotify service would
+     */
+    private <T> List<T> read(InvocationOnMock invocation, Object response) throws IOException {
+        SpotifyPageReader<T> reader = invocation.getArgument(1);
+        return reader.read(mapper.writeValueAsBytes(response)).items();
+    }
+
+    private List<Artist> readArtists(InvocationOnMock invocation, SpotifyArtist... artists) throws IOException {
+        return read(invocation, SpotifyArtistsResponse.builder().artists(List.of(artists)).build());
+    }
+
+    private List<Album> readAlbums(InvocationOnMock invocation, SpotifyAlbum... albums) throws IOException {
+        return read(invocation, SpotifyAlbumsResponse.builder().items(List.of(albums)).build());
     }
 
     private SpotifyArtist getSpotifyArtist() {
@@ -4,6 +4,10 @@ import com.malte.immochallenge.album.exceptions.AlbumAlreadyExistsException;
 import com.malte.immochallenge.album.exceptions.AlbumNotFoundException;
 import com.malte.immochallenge.album.exceptions.UpdateAlbumException;
 import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.album.model.SimplifiedArtist;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.search.SearchConfiguration;
+import com.malte.immochallenge.search.SearchIndex;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -11,9 +15,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -31,9 +38,21 @@ class AlbumServiceTest {
     @Mock
     AlbumRepository albumRepository;
 
+    @Mock
+    SearchConfiguration searchConfiguration;
+
+    @Mock
+    SearchIndex searchIndex;
+
+    @Mock
+    AutocompleteIndex autocompleteIndex;
+
     @InjectMocks
     AlbumService albumService;
 
+    @Captor
+    ArgumentCaptor<List<Album>> albumsCaptor;
+
     @Nested
     public class GetAlbumById {
         @Test
@@ -64,7 +83,7 @@ class AlbumServiceTest {
         @Test
         @DisplayName("search for album with no match")
         public void searchForAlbum1() {
-            when(albumRepository.searchByName(anyString())).thenReturn(List.of());
+            when(albumRepository.searchByName(anyString(), anyInt())).thenReturn(List.of());
             var searchResult = albumService.searchForAlbum("test");
             assertThat(searchResult).hasSize(0);
         }
@@ -72,7 +91,7 @@ class AlbumServiceTest {
         @Test
         @DisplayName("search for album with one match")
         public void searchForAlbum2() {
-            when(albumRepository.searchByName(anyString())).thenReturn(List.of(Album.builder().build()));
+            when(albumRepository.searchByName(anyString(), anyInt())).thenReturn(List.of(Album.builder().build()));
             var searchResult = albumService.searchForAlbum("test");
             assertThat(searchResult).hasSize(1);
         }
@@ -81,14 +100,14 @@ class AlbumServiceTest {
         @DisplayName("search for album with no match because search term is null")
         public void searchForAlbum3() {
             albumService.searchForAlbum(null);
-            verify(albumRepository, times(0)).searchByName(anyString());
+            verify(albumRepository, times(0)).searchByName(anyString(), anyInt());
         }
 
         @Test
         @DisplayName("search for album with no match because search term is empty")
         public void searchForAlbum4() {
             albumService.searchForAlbum("");
-            verify(albumRepository, times(0)).searchByName(anyString());
+            verify(albumRepository, times(0)).searchByName(anyString(), anyInt());
         }
 
         @Test
@@ -96,7 +115,7 @@ class AlbumServiceTest {
         public void searchForAlbum5() {
             Album expected = getAlbum();
 
-            when(albumRepository.searchByName(anyString()))
+            when(albumRepository.searchByName(anyString(), anyInt()))
                     .thenReturn(List.of(expected));
 
             var result = albumService.searchForAlbum("test");
@@ -105,13 +124,24 @@ class AlbumServiceTest {
         }
 
         @ParameterizedTest
-        @CsvSource({"test,%test%", "TEST,%test%", "1234,%1234%", "abc123, %abc123%", "a&/(;b c, %ab c%"})
+        @CsvSource({"test,test", "TEST,test", "1234,1234", "abc123, abc123", "a&/(;b c, a b c", "Beyoncé,beyonce", "Sigur Rós,sigur ros", "AC/DC,ac dc"})
         @DisplayName("check the input gets sanitized correctly")
         public void searchForAlbum6(String input, String sanitized) {
-            when(albumRepository.searchByName(anyString()))
+            when(albumRepository.searchByName(anyString(), anyInt()))
                     .thenReturn(List.of());
             albumService.searchForAlbum(input);
-            verify(albumRepository).searchByName(sanitized);
+            verify(albumRepository).searchByName(eq(sanitized), anyInt());
+        }
+
+        @Test
+        @DisplayName("the number of results should be limited by the configuration")
+        public void searchForAlbum7() {
+            when(searchConfiguration.getResultLimit()).thenReturn(25);
+            when(albumRepository.searchByName(anyString(), anyInt())).thenReturn(List.of());
+
+            albumService.searchForAlbum("test");
+
+            verify(albumRepository).searchByName("test", 25);
         }
     }
 
@@ -142,15 +172,44 @@ class AlbumServiceTest {
         @Test
         @DisplayName("album should be inserted")
         public void handleNewAlbums2() {
-            when(albumRepository.existsBySpotifyId(anyString())).thenReturn(false);
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
 
             albumService.handleNewAlbums(List.of(getAlbum()), syncDate);
 
-            ArgumentCaptor<Album> albumCaptor = ArgumentCaptor.forClass(Album.class);
-            verify(albumRepository).save(albumCaptor.capture());
+            verify(albumRepository).saveAll(albumsCaptor.capture());
 
-            assertThat(albumCaptor.getAllValues()).hasSize(1);
-            assertThat(albumCaptor.getValue().getLastSynchronized()).isEqualTo(syncDate);
+            assertThat(albumsCaptor.getAllValues()).hasSize(1);
+            assertThat(albumsCaptor.getValue()).hasSize(1);
+            assertThat(albumsCaptor.getValue().getFirst().getLastSynchronized()).isEqualTo(syncDate);
+        }
+
+        @Test
+        @DisplayName("the albums should be locked before the existing ones are read")
+        public void handleNewAlbums10() {
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            albumService.handleNewAlbums(List.of(getAlbum(), getAlbum()), syncDate);
+
+            var inOrder = inOrder(albumRepository);
+            inOrder.verify(albumRepository).lockSpotifyIds(new String[]{getAlbum().getSpotifyId()});
+            inOrder.verify(albumRepository).findAllBySpotifyIds(new String[]{getAlbum().getSpotifyId()});
+        }
+
+        @Test
+        @DisplayName("albums should only be indexed once the transaction is committed")
+        public void handleNewAlbums9() {
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+            when(albumRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                albumService.handleNewAlbums(List.of(getAlbum()), syncDate);
+
+                verifyNoInteractions(searchIndex);
+                TransactionSynchronizationUtils.triggerAfterCommit();
+                verify(searchIndex).indexAlbums(any());
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
         }
 
         @Test
@@ -160,7 +219,7 @@ class AlbumServiceTest {
             Album existingAlbum = Album.builder()
                     .id(66L)
                     .lastSynchronized(syncDate.minusMinutes(13))
-                    .spotifyId("existing")
+                    .spotifyId(album.getSpotifyId())
                     .spotifyUri("existing")
                     .name("existing")
                     .albumType("existing")
@@ -176,23 +235,21 @@ class AlbumServiceTest {
                     .externalUrl("existing")
                     .build();
             album = album.toBuilder().lastSynchronized(syncDate.minusMinutes(5)).build();
-            when(albumRepository.existsBySpotifyId(album.getSpotifyId())).thenReturn(true);
-            when(albumRepository.albumWasModified(album.getSpotifyId())).thenReturn(false);
-            when(albumRepository.findBySpotifyId(album.getSpotifyId())).thenReturn(Optional.of(existingAlbum));
+            when(albumRepository.findAllBySpotifyIds(new String[]{album.getSpotifyId()})).thenReturn(List.of(existingAlbum));
 
             albumService.handleNewAlbums(List.of(album), syncDate);
 
-            ArgumentCaptor<Album> albumCaptor = ArgumentCaptor.forClass(Album.class);
-            verify(albumRepository).save(albumCaptor.capture());
+            verify(albumRepository).saveAll(albumsCaptor.capture());
 
-            assertThat(albumCaptor.getAllValues()).hasSize(1);
-            Album savedAlbum = albumCaptor.getValue();
+            assertThat(albumsCaptor.getValue()).hasSize(1);
+            Album savedAlbum = albumsCaptor.getValue().getFirst();
             assertThat(savedAlbum.getLastSynchronized()).isEqualTo(syncDate);
             assertThat(savedAlbum.getId()).isEqualTo(existingAlbum.getId());
             assertThat(savedAlbum.getSpotifyId()).isEqualTo(existingAlbum.getSpotifyId());
             assertThat(savedAlbum).usingRecursiveComparison()
-                    .ignoringFields("id", "spotifyId", "lastModified", "lastSynchronized")
+                    .ignoringFields("id", "spotifyId", "lastModified", "lastSynchronized", "contentHash")
                     .isEqualTo(album);
+            assertThat(savedAlbum.getContentHash()).isEqualTo(AlbumService.contentHashOf(album));
         }
 
         @Test
@@ -200,25 +257,74 @@ class AlbumServiceTest {
         public void handleNewAlbums4() {
             Album album = getAlbum();
             album.setLastSynchronized(syncDate.minusMinutes(5));
-            when(albumRepository.existsBySpotifyId(album.getSpotifyId())).thenReturn(true);
-            when(albumRepository.albumWasModified(album.getSpotifyId())).thenReturn(true);
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of(album));
 
-            albumService.handleNewAlbums(List.of(album), syncDate);
+            var result = albumService.handleNewAlbums(List.of(album), syncDate);
 
-            verify(albumRepository, never()).save(any(Album.class));
+            verify(albumRepository, never()).saveAll(any());
+            verify(albumRepository).markSynchronized(new String[]{album.getSpotifyId()}, syncDate);
+            assertThat(result.modifiedSpotifyIds()).containsExactly(album.getSpotifyId());
+            assertThat(result.hasChanges()).isFalse();
         }
 
         @Test
-        @DisplayName("should throw if user cant be found")
+        @DisplayName("albums should be split into inserts and updates and loaded with one query")
         public void handleNewAlbums5() {
+            Album newAlbum = getAlbum().toBuilder().id(null).spotifyId("new").build();
+            Album unmodifiedAlbum = getAlbum().toBuilder().spotifyId("unmodified").build();
+            Album modifiedAlbum = getAlbum().toBuilder().spotifyId("modified").build();
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of(
+                    unmodifiedAlbum.toBuilder().lastModified(null).build(),
+                    modifiedAlbum));
+
+            var result = albumService.handleNewAlbums(List.of(newAlbum, unmodifiedAlbum, modifiedAlbum), syncDate);
+
+            verify(albumRepository, times(1)).findAllBySpotifyIds(any());
+            verify(albumRepository, times(2)).saveAll(albumsCaptor.capture());
+            assertThat(albumsCaptor.getAllValues().get(0)).extracting(Album::getSpotifyId).containsExactly("new");
+            assertThat(albumsCaptor.getAllValues().get(1)).extracting(Album::getSpotifyId).containsExactly("unmodified");
+            assertThat(result.insertedSpotifyIds()).containsExactly("new");
+            assertThat(result.updatedSpotifyIds()).containsExactly("unmodified");
+            assertThat(result.modifiedSpotifyIds()).containsExactly("modified");
+        }
+
+        @Test
+        @DisplayName("an album that is returned multiple times should only be inserted once")
+        public void handleNewAlbums6() {
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            albumService.handleNewAlbums(List.of(getAlbum(), getAlbum()), syncDate);
+
+            verify(albumRepository).saveAll(albumsCaptor.capture());
+            assertThat(albumsCaptor.getValue()).hasSize(1);
+        }
+
+        @Test
+        @DisplayName("album should not be rewritten when its api data did not change")
+        public void handleNewAlbums7() {
+            Album album = getAlbum().toBuilder().lastModified(null).build();
+            Album existingAlbum = album.toBuilder().contentHash(AlbumService.contentHashOf(album)).build();
+            when(albumRepository.findAllBySpotifyIds(any())).thenReturn(List.of(existingAlbum));
+
+            var result = albumService.handleNewAlbums(List.of(album), syncDate);
+
+            verify(albumRepository, never()).saveAll(any());
+            verify(albumRepository).markSynchronized(new String[]{album.getSpotifyId()}, syncDate);
+            assertThat(result.unchangedSpotifyIds()).containsExactly(album.getSpotifyId());
+            assertThat(result.hasChanges()).isFalse();
+        }
+
+        @Test
+        @DisplayName("the content hash should only depend on the api data")
+        public void handleNewAlbums8() {
             Album album = getAlbum();
-            album.setLastSynchronized(syncDate.minusMinutes(5));
-            when(albumRepository.existsBySpotifyId(album.getSpotifyId())).thenReturn(true);
-            when(albumRepository.albumWasModified(album.getSpotifyId())).thenReturn(false);
-            when(albumRepository.findBySpotifyId(album.getSpotifyId())).thenReturn(Optional.empty());
+            var contentHash = AlbumService.contentHashOf(album);
 
-            assertThatThrownBy(() -> albumService.handleNewAlbums(List.of(album), syncDate)).isInstanceOf(AlbumNotFoundException.class)
-                    .hasMessageContaining("Album with spotifyId spotifyId was not found");
+            assertThat(AlbumService.contentHashOf(album.toBuilder().lastSynchronized(syncDate).build())).isEqualTo(contentHash);
+            assertThat(AlbumService.contentHashOf(album.toBuilder().totalTracks(6).build())).isNotEqualTo(contentHash);
+            assertThat(AlbumService.contentHashOf(album.toBuilder()
+                    .artists(List.of(SimplifiedArtist.builder().spotifyId("artistId").build()))
+                    .build())).isNotEqualTo(contentHash);
         }
     }
 
@@ -262,6 +368,8 @@ class AlbumServiceTest {
             Album savedAlbum = albumService.updateAlbum(album.getId(), album);
 
             assertThat(savedAlbum.getLastModified()).isNotEqualTo(album.getLastModified());
+            verify(searchIndex).indexAlbum(savedAlbum);
+            verify(autocompleteIndex).put(SearchIndex.Type.ALBUM, savedAlbum.getId(), savedAlbum.getName());
             assertThat(savedAlbum).usingRecursiveComparison()
                     .ignoringFields("lastModified")
                     .isEqualTo(album);
@@ -296,6 +404,9 @@ class AlbumServiceTest {
             when(albumRepository.existsById(album.getId())).thenReturn(true);
 
             albumService.deleteAlbum(album.getId());
+
+            verify(searchIndex).remove(SearchIndex.Type.ALBUM, album.getId());
+            verify(autocompleteIndex).remove(SearchIndex.Type.ALBUM, album.getId());
         }
 
         @Test
@@ -5,6 +5,9 @@ import com.malte.immochallenge.artist.exceptions.ArtistNotFoundException;
 import com.malte.immochallenge.artist.exceptions.UpdateArtistException;
 import com.malte.immochallenge.artist.model.Artist;
 import com.malte.immochallenge.model.Image;
+import com.malte.immochallenge.search.AutocompleteIndex;
+import com.malte.immochallenge.search.SearchConfiguration;
+import com.malte.immochallenge.search.SearchIndex;
 import com.malte.immochallenge.artist.repository.ArtistRepository;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -13,9 +16,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -33,9 +40,21 @@ class ArtistServiceTest {
     @Mock
     ArtistRepository artistRepository;
 
+    @Mock
+    SearchConfiguration searchConfiguration;
+
+    @Mock
+    SearchIndex searchIndex;
+
+    @Mock
+    AutocompleteIndex autocompleteIndex;
+
     @InjectMocks
     ArtistService artistService;
 
+    @Captor
+    ArgumentCaptor<List<Artist>> artistsCaptor;
+
     @Nested
     public class GetArtistById {
         @Test
@@ -76,7 +95,7 @@ class ArtistServiceTest {
         @Test
         @DisplayName("search for artist with no match")
         public void searchForArtist1() {
-            when(artistRepository.searchByName(anyString())).thenReturn(List.of());
+            when(artistRepository.searchByName(anyString(), anyInt())).thenReturn(List.of());
             var searchResult = artistService.searchForArtist("test");
             assertThat(searchResult).hasSize(0);
         }
@@ -84,7 +103,7 @@ class ArtistServiceTest {
         @Test
         @DisplayName("search for artist with one match")
         public void searchForArtist2() {
-            when(artistRepository.searchByName(anyString())).thenReturn(List.of(Artist.builder().build()));
+            when(artistRepository.searchByName(anyString(), anyInt())).thenReturn(List.of(Artist.builder().build()));
             var searchResult = artistService.searchForArtist("test");
             assertThat(searchResult).hasSize(1);
         }
@@ -93,14 +112,14 @@ class ArtistServiceTest {
         @DisplayName("search for artist with no match because search term is null")
         public void searchForArtist3() {
             artistService.searchForArtist(null);
-            verify(artistRepository, times(0)).searchByName(anyString());
+            verify(artistRepository, times(0)).searchByName(anyString(), anyInt());
         }
 
         @Test
         @DisplayName("search for artist with no match because search term is empty")
         public void searchForArtist4() {
             artistService.searchForArtist("");
-            verify(artistRepository, times(0)).searchByName(anyString());
+            verify(artistRepository, times(0)).searchByName(anyString(), anyInt());
         }
 
         @Test
@@ -108,7 +127,7 @@ class ArtistServiceTest {
         public void searchForArtist5() {
             Artist expected = getArtist();
 
-            when(artistRepository.searchByName(anyString()))
+            when(artistRepository.searchByName(anyString(), anyInt()))
                     .thenReturn(List.of(expected));
 
             var result = artistService.searchForArtist("test");
@@ -117,13 +136,24 @@ class ArtistServiceTest {
         }
 
         @ParameterizedTest
-        @CsvSource({"test,%test%", "TEST,%test%", "1234,%1234%", "abc123, %abc123%", "a&/(;b c, %ab c%"})
+        @CsvSource({"test,test", "TEST,test", "1234,1234", "abc123, abc123", "a&/(;b c, a b c", "Beyoncé,beyonce", "Sigur Rós,sigur ros", "AC/DC,ac dc"})
         @DisplayName("check the input gets sanitized correctly")
         public void searchForArtist6(String input, String sanitized) {
-            when(artistRepository.searchByName(anyString()))
+            when(artistRepository.searchByName(anyString(), anyInt()))
                     .thenReturn(List.of());
             artistService.searchForArtist(input);
-            verify(artistRepository).searchByName(sanitized);
+            verify(artistRepository).searchByName(eq(sanitized), anyInt());
+        }
+
+        @Test
+        @DisplayName("the number of results should be limited by the configuration")
+        public void searchForArtist7() {
+            when(searchConfiguration.getResultLimit()).thenReturn(25);
+            when(artistRepository.searchByName(anyString(), anyInt())).thenReturn(List.of());
+
+            artistService.searchForArtist("test");
+
+            verify(artistRepository).searchByName("test", 25);
         }
     }
 
@@ -141,15 +171,27 @@ class ArtistServiceTest {
         @Test
         @DisplayName("artist should be inserted")
         public void handleNewArtists2() {
-            when(artistRepository.existsBySpotifyId(anyString())).thenReturn(false);
+            when(artistRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
 
             artistService.handleNewArtists(List.of(getArtist()), syncDate);
 
-            ArgumentCaptor<Artist> artistCaptor = ArgumentCaptor.forClass(Artist.class);
-            verify(artistRepository).save(artistCaptor.capture());
+            verify(artistRepository).saveAll(artistsCaptor.capture());
 
-            assertThat(artistCaptor.getAllValues()).hasSize(1);
-            assertThat(artistCaptor.getValue().getLastSynchronized()).isEqualTo(syncDate);
+            assertThat(artistsCaptor.getValue()).hasSize(1);
+            assertThat(artistsCaptor.getValue().getFirst().getLastSynchronized()).isEqualTo(syncDate);
+            assertThat(artistsCaptor.getValue().getFirst().getContentHash()).isEqualTo(ArtistService.contentHashOf(getArtist()));
+        }
+
+        @Test
+        @DisplayName("the artists should be locked before the existing ones are read")
+        public void handleNewArtists7() {
+            when(artistRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            artistService.handleNewArtists(List.of(getArtist(), getArtist()), syncDate);
+
+            var inOrder = inOrder(artistRepository);
+            inOrder.verify(artistRepository).lockSpotifyIds(new String[]{getArtist().getSpotifyId()});
+            inOrder.verify(artistRepository).findAllBySpotifyIds(new String[]{getArtist().getSpotifyId()});
         }
 
         @Test
@@ -158,8 +200,9 @@ class ArtistServiceTest {
             Artist artist = getArtist();
             Artist existingArtist = Artist.builder()
                     .id(99L)
-                    .lastModified(LocalDateTime.now())
+                    .lastModified(null)
                     .lastSynchronized(syncDate.minusMinutes(10))
+                    .spotifyId(artist.getSpotifyId())
                     .href("existing")
                     .spotifyUri("existing")
                     .externalUrl("existing")
@@ -168,24 +211,23 @@ class ArtistServiceTest {
                     .genres(List.of("existing"))
                     .popularity(1)
                     .images(List.of(Image.builder().url("existing").width(1).height(1).build()))
+                    .contentHash("existing")
                     .build();
             artist = artist.toBuilder().lastSynchronized(syncDate.minusMinutes(5)).build();
-            when(artistRepository.existsBySpotifyId(artist.getSpotifyId())).thenReturn(true);
-            when(artistRepository.artistWasModified(artist.getSpotifyId())).thenReturn(false);
-            when(artistRepository.findBySpotifyId(artist.getSpotifyId())).thenReturn(Optional.of(existingArtist));
+            when(artistRepository.findAllBySpotifyIds(new String[]{artist.getSpotifyId()})).thenReturn(List.of(existingArtist));
 
             artistService.handleNewArtists(List.of(artist), syncDate);
 
-            ArgumentCaptor<Artist> artistCaptor = ArgumentCaptor.forClass(Artist.class);
-            verify(artistRepository).save(artistCaptor.capture());
+            verify(artistRepository).saveAll(artistsCaptor.capture());
 
-            assertThat(artistCaptor.getAllValues()).hasSize(1);
-            Artist savedArtist = artistCaptor.getValue();
+            assertThat(artistsCaptor.getValue()).hasSize(1);
+            Artist savedArtist = artistsCaptor.getValue().getFirst();
             assertThat(savedArtist.getLastSynchronized()).isEqualTo(syncDate);
             assertThat(savedArtist.getId()).isEqualTo(existingArtist.getId());
             assertThat(savedArtist.getSpotifyId()).isEqualTo(existingArtist.getSpotifyId());
+            assertThat(savedArtist.getContentHash()).isEqualTo(ArtistService.contentHashOf(artist));
             assertThat(savedArtist).usingRecursiveComparison()
-                    .ignoringFields("id", "spotifyId", "lastModified", "lastSynchronized")
+                    .ignoringFields("id", "spotifyId", "lastModified", "lastSynchronized", "contentHash")
                     .isEqualTo(artist);
         }
 
@@ -194,25 +236,44 @@ class ArtistServiceTest {
         public void handleNewArtists4() {
             Artist artist = getArtist();
             artist.setLastSynchronized(syncDate.minusMinutes(5));
-            when(artistRepository.existsBySpotifyId(artist.getSpotifyId())).thenReturn(true);
-            when(artistRepository.artistWasModified(artist.getSpotifyId())).thenReturn(true);
+            when(artistRepository.findAllBySpotifyIds(any())).thenReturn(List.of(artist));
 
-            artistService.handleNewArtists(List.of(artist), syncDate);
+            var result = artistService.handleNewArtists(List.of(artist), syncDate);
 
-            verify(artistRepository, never()).save(any(Artist.class));
+            verify(artistRepository, never()).saveAll(any());
+            assertThat(result.modifiedSpotifyIds()).containsExactly(artist.getSpotifyId());
         }
 
         @Test
-        @DisplayName("should throw if user cant be found")
+        @DisplayName("artist should not be written when the data did not change")
         public void handleNewArtists5() {
             Artist artist = getArtist();
-            artist.setLastSynchronized(syncDate.minusMinutes(5));
-            when(artistRepository.existsBySpotifyId(artist.getSpotifyId())).thenReturn(true);
-            when(artistRepository.artistWasModified(artist.getSpotifyId())).thenReturn(false);
-            when(artistRepository.findBySpotifyId(artist.getSpotifyId())).thenReturn(Optional.empty());
+            Artist existingArtist = artist.toBuilder()
+                    .id(99L)
+                    .lastModified(null)
+                    .contentHash(ArtistService.contentHashOf(artist))
+                    .build();
+            when(artistRepository.findAllBySpotifyIds(any())).thenReturn(List.of(existingArtist));
+
+            var result = artistService.handleNewArtists(List.of(artist), syncDate);
+
+            verify(artistRepository, never()).saveAll(any());
+            verify(artistRepository).markSynchronized(new String[]{artist.getSpotifyId()}, syncDate);
+            assertThat(result.unchangedSpotifyIds()).containsExactly(artist.getSpotifyId());
+            assertThat(result.hasChanges()).isFalse();
+        }
+
+        @Test
+        @DisplayName("content hash should change when any synchronized field changes")
+        public void handleNewArtists6() {
+            Artist artist = getArtist();
+            var contentHash = ArtistService.contentHashOf(artist);
 
-            assertThatThrownBy(() -> artistService.handleNewArtists(List.of(artist), syncDate)).isInstanceOf(ArtistNotFoundException.class)
-                    .hasMessageContaining("Artist with spotifyId spotifyId was not found");
+            assertThat(ArtistService.contentHashOf(artist.toBuilder().build())).isEqualTo(contentHash);
+            assertThat(ArtistService.contentHashOf(artist.toBuilder().followers(artist.getFollowers() + 1).build())).isNotEqualTo(contentHash);
+            assertThat(ArtistService.contentHashOf(artist.toBuilder().genres(List.of("genre1")).build())).isNotEqualTo(contentHash);
+            assertThat(ArtistService.contentHashOf(artist.toBuilder().images(List.of()).build())).isNotEqualTo(contentHash);
+            assertThat(ArtistService.contentHashOf(artist.toBuilder().lastSynchronized(syncDate).build())).isEqualTo(contentHash);
         }
     }
 
@@ -256,11 +317,30 @@ class ArtistServiceTest {
             Artist savedArtist = artistService.updateArtist(artist.getId(), artist);
 
             assertThat(savedArtist.getLastModified()).isNotEqualTo(artist.getLastModified());
+            verify(searchIndex).indexArtist(savedArtist);
+            verify(autocompleteIndex).put(SearchIndex.Type.ARTIST, savedArtist.getId(), savedArtist.getName());
             assertThat(savedArtist).usingRecursiveComparison()
                     .ignoringFields("lastModified")
                     .isEqualTo(artist);
         }
 
+        @Test
+        @DisplayName("a rolled back update should not be indexed")
+        public void updateArtist4() {
+            Artist artist = getArtist();
+            when(artistRepository.existsById(artist.getId())).thenReturn(true);
+            when(artistRepository.save(any(Artist.class))).thenAnswer(i -> i.getArgument(0));
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                artistService.updateArtist(artist.getId(), artist);
+                TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+                verifyNoInteractions(searchIndex, autocompleteIndex);
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
         @Test
         @DisplayName("update artist should throw when user not exists")
         public void updateArtist2() {
@@ -290,6 +370,9 @@ class ArtistServiceTest {
             when(artistRepository.existsById(artist.getId())).thenReturn(true);
 
             artistService.deleteArtist(artist.getId());
+
+            verify(searchIndex).remove(SearchIndex.Type.ARTIST, artist.getId());
+            verify(autocompleteIndex).remove(SearchIndex.Type.ARTIST, artist.getId());
         }
 
         @Test
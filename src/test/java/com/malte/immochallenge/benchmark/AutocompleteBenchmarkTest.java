@@ -0,0 +1,94 @@
+package com.malte.immochallenge.benchmark;
+
+import com.malte.immochallenge.search.AutocompleteIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * measures the autocompletion on a million album names and a hundred thousand artist names: the time to build the
+ * index from the database, its memory per million names and the latency of a lookup. run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+class AutocompleteBenchmarkTest {
+    private static final int ALBUMS = 1_000_000;
+    private static final int ARTISTS = 100_000;
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int ROUNDS = 20_000;
+    private static final List<String> PREFIXES = List.of("m", "mo", "moon r", "dark river 12", "sigur r", "beyonc", "artist 4242", "xyz");
+
+    static BenchmarkApplication application;
+
+    @BeforeAll
+    static void start() throws IOException {
+        application = BenchmarkApplication.start();
+        var jdbcTemplate = application.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("""
+                INSERT INTO album (spotify_id, name, total_tracks)
+                SELECT 'album' || i,
+                       (ARRAY['Red', 'Blue', 'Moon', 'Dark', 'Light', 'River', 'Stone', 'Fire', 'Night', 'Dream'])[1 + i % 10]
+                           || ' ' || (ARRAY['River', 'Moon', 'Night', 'Sun', 'Fire', 'Stone', 'Sea', 'Sky', 'Road', 'Dark'])[1 + (i / 10) % 10]
+                           || ' ' || i,
+                       10
+                FROM generate_series(1, %d) AS i
+                """.formatted(ALBUMS));
+        jdbcTemplate.execute("UPDATE album SET search_key = lower(name)");
+        jdbcTemplate.execute("""
+                INSERT INTO artist (spotify_id, name, search_key)
+                SELECT 'artist' || i,
+                       (ARRAY['Artist', 'Sigur Rós', 'Beyoncé', 'Björk', 'The Band'])[1 + i % 5] || ' ' || i,
+                       (ARRAY['artist', 'sigur ros', 'beyonce', 'bjork', 'the band'])[1 + i % 5] || ' ' || i
+                FROM generate_series(1, %d) AS i
+                """.formatted(ARTISTS));
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        if (application != null) {
+            application.close();
+        }
+    }
+
+    @Test
+    @DisplayName("autocomplete a million names")
+    void autocomplete() {
+        var autocompleteIndex = application.getBean(AutocompleteIndex.class);
+        var started = System.nanoTime();
+        autocompleteIndex.rebuild();
+        var buildMillis = (System.nanoTime() - started) / 1e6;
+
+        assertThat(autocompleteIndex.size()).isEqualTo(ALBUMS + ARTISTS);
+        // bytes per name equal megabytes per million names
+        System.out.printf(Locale.ROOT, "%d names built in %.0f ms, %.1f MB in total, %.1f MB per million names%n",
+                autocompleteIndex.size(), buildMillis, autocompleteIndex.memoryBytes() / 1e6,
+                (double) autocompleteIndex.memoryBytes() / autocompleteIndex.size());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            PREFIXES.forEach(autocompleteIndex::complete);
+        }
+        for (String prefix : PREFIXES) {
+            var nanos = new long[ROUNDS];
+            var results = 0L;
+            for (int i = 0; i < ROUNDS; i++) {
+                var lookupStarted = System.nanoTime();
+                results += autocompleteIndex.complete(prefix).size();
+                nanos[i] = System.nanoTime() - lookupStarted;
+            }
+            Arrays.sort(nanos);
+            System.out.printf(Locale.ROOT, "  %-16s p50 %7.1f µs  p99 %7.1f µs  p99.9 %7.1f µs  %.0f results%n", "'" + prefix + "'",
+                    nanos[ROUNDS / 2] / 1e3, nanos[(int) Math.ceil(ROUNDS * 0.99) - 1] / 1e3,
+                    nanos[(int) Math.ceil(ROUNDS * 0.999) - 1] / 1e3, (double) results / ROUNDS);
+            assertThat(nanos[(int) Math.ceil(ROUNDS * 0.99) - 1]).isLessThan(1_000_000L);
+        }
+    }
+}
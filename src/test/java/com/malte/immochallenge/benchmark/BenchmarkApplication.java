@@ -0,0 +1,59 @@
+package com.malte.immochallenge.benchmark;
+
+import com.malte.immochallenge.ImmochallengeApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the application without a web server on top of an embedded postgres, for benchmarks that measure more than
+ * a single class. the scheduled synchronization is disabled, the benchmarks start the runs themselves
+ */
+public class BenchmarkApplication implements AutoCloseable {
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkApplication(List<String> properties) throws IOException {
+        postgres = EmbeddedPostgres.start();
+        var jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+        List<String> allProperties = new ArrayList<>(List.of(
+                "spring.datasource.url=" + jdbcUrl,
+                "spring.datasource.username=postgres",
+                "spring.datasource.password=postgres",
+                "spring.flyway.url=" + jdbcUrl,
+                "spring.flyway.user=postgres",
+                "spring.flyway.password=postgres",
+                "spring.flyway.schemas=public",
+                "spotify.client-id=benchmark",
+                "spotify.client-secret=benchmark",
+                "spotify.response-cache-directory=",
+                "search.index-directory=",
+                "sync.cron=-",
+                "logging.level.com.malte.immochallenge=WARN"));
+        // later properties win, so the benchmark can override the defaults above
+        allProperties.addAll(properties);
+        // passed as command line arguments, they take precedence over the application.yml
+        context = new SpringApplicationBuilder(ImmochallengeApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(allProperties.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    public static BenchmarkApplication start(String... properties) throws IOException {
+        return new BenchmarkApplication(List.of(properties));
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
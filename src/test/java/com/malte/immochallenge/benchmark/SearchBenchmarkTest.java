@@ -0,0 +1,113 @@
+package com.malte.immochallenge.benchmark;
+
+import com.malte.immochallenge.album.AlbumService;
+import com.malte.immochallenge.search.SearchService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * compares the latency of the album searches on a million albums: the ILIKE query the search used before,
+ * the trigram query and the full text index. run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+class SearchBenchmarkTest {
+    private static final int ALBUMS = 1_000_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 200;
+    private static final int LIMIT = 50;
+    private static final List<String> SEARCH_TERMS = List.of("moon", "dark river", "stone 4242", "fire night 77");
+
+    @TempDir
+    static Path indexDirectory;
+
+    static BenchmarkApplication application;
+
+    @BeforeAll
+    static void start() throws IOException {
+        application = BenchmarkApplication.start(
+                "search.index-directory=" + indexDirectory,
+                "search.result-limit=" + LIMIT);
+        var jdbcTemplate = application.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("""
+                INSERT INTO album (spotify_id, name, total_tracks)
+                SELECT 'album' || i,
+                       (ARRAY['red', 'blue', 'moon', 'dark', 'light', 'river', 'stone', 'fire', 'night', 'dream'])[1 + i % 10]
+                           || ' ' || (ARRAY['river', 'moon', 'night', 'sun', 'fire', 'stone', 'sea', 'sky', 'road', 'dark'])[1 + (i / 10) % 10]
+                           || ' ' || i,
+                       10
+                FROM generate_series(1, %d) AS i
+                """.formatted(ALBUMS));
+        jdbcTemplate.execute("""
+                INSERT INTO album_artists (album_id, spotify_id, name)
+                SELECT id, 'artist' || (id % 10000), 'artist ' || (id % 10000)
+                FROM album
+                """);
+        // the names are lower case ascii words and digits, their search key is the lowercase name
+        jdbcTemplate.execute("UPDATE album SET search_key = lower(name)");
+        jdbcTemplate.execute("ANALYZE album");
+        application.getBean(SearchService.class).reconcileIndex();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        if (application != null) {
+            application.close();
+        }
+    }
+
+    @Test
+    @DisplayName("search a million albums")
+    void search() {
+        var jdbcTemplate = application.getBean(JdbcTemplate.class);
+        var transactionTemplate = new TransactionTemplate(application.getBean(PlatformTransactionManager.class));
+        var albumService = application.getBean(AlbumService.class);
+        var searchService = application.getBean(SearchService.class);
+
+        measure("ilike, sequential scan", searchTerm -> transactionTemplate.execute(status -> {
+            // the query as it was before the trigram index, without an index it could use
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+            return jdbcTemplate.queryForList("SELECT * FROM album a WHERE lower(a.name) ILIKE lower(?) LIMIT ?",
+                    "%" + searchTerm + "%", LIMIT).size();
+        }));
+        measure("trigram index", searchTerm -> albumService.searchForAlbum(searchTerm).size());
+        measure("full text index", searchTerm -> searchService.searchFullText(searchTerm).albums().size());
+    }
+
+    private static void measure(String name, Function<String, Integer> search) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            SEARCH_TERMS.forEach(search::apply);
+        }
+        var nanos = new long[ROUNDS * SEARCH_TERMS.size()];
+        var results = 0L;
+        var index = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String searchTerm : SEARCH_TERMS) {
+                var started = System.nanoTime();
+                results += search.apply(searchTerm);
+                nanos[index++] = System.nanoTime() - started;
+            }
+        }
+        Arrays.sort(nanos);
+        assertThat(results).isPositive();
+        System.out.printf(Locale.ROOT, "%-24s p50 %8.2f ms  p99 %8.2f ms  %.1f results per search%n", name,
+                nanos[nanos.length / 2] / 1e6, nanos[(int) Math.ceil(nanos.length * 0.99) - 1] / 1e6,
+                (double) results / nanos.length);
+    }
+}
@@ -0,0 +1,300 @@
+package com.malte.immochallenge.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malte.immochallenge.spotify.model.SpotifyAlbum;
+import com.malte.immochallenge.spotify.model.SpotifyArtist;
+import com.malte.immochallenge.spotify.model.SpotifyExternalUrls;
+import com.malte.immochallenge.spotify.model.SpotifyImage;
+import com.malte.immochallenge.spotify.response.SpotifyAccessTokenResponse;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyApiErrorResponse;
+import com.malte.immochallenge.spotify.response.SpotifyArtistsResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Builder;
+import lombok.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * a local stand-in for the accounts api and the artist endpoints of the web api. it serves a synthetic catalog
+ * in which every artist id exists and has the same number of albums, so catalogs of any size can be synchronized
+ * without preparing data. the responses are built from the api model classes, so they have the size and shape
+ * of real responses. latency, server errors and rate limiting can be injected
+ */
+public class SpotifyStubServer implements AutoCloseable {
+    private static final Pattern ALBUMS_PATH = Pattern.compile("/v1/artists/([^/]+)/albums");
+    private static final List<String> MARKETS = Arrays.asList(Locale.getISOCountries());
+
+    private final Options options;
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private SpotifyStubServer(Options options) throws IOException {
+        this.options = options;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/token", this::handleToken);
+        server.createContext("/v1/artists", this::handleArtists);
+        server.start();
+    }
+
+    public static SpotifyStubServer start(Options options) throws IOException {
+        return new SpotifyStubServer(options);
+    }
+
+    public String getApiUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public String getTokenUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/token";
+    }
+
+    /**
+     * the number of requests to the web api, including the ones that were answered with an error
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public void resetCounters() {
+        requests.reset();
+        rateLimited.reset();
+        failed.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, SpotifyAccessTokenResponse.builder()
+                    .access_token("stub-token")
+                    .token_type("Bearer")
+                    .expires_in(options.getTokenLifetime().toSeconds())
+                    .build());
+        }
+    }
+
+    private void handleArtists(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            sleep(options.getLatency());
+            if (injectFailure(exchange)) {
+                return;
+            }
+            var path = exchange.getRequestURI().getPath();
+            var query = queryOf(exchange);
+            if (path.equals("/v1/artists")) {
+                var artists = Arrays.stream(query.getOrDefault("ids", "").split(","))
+                        .filter(id -> !id.isBlank())
+                        .map(this::artist)
+                        .toList();
+                respond(exchange, 200, SpotifyArtistsResponse.builder().artists(artists).build());
+                return;
+            }
+            var albumsPath = ALBUMS_PATH.matcher(path);
+            if (albumsPath.matches()) {
+                var artistId = albumsPath.group(1);
+                var limit = Integer.parseInt(query.getOrDefault("limit", "20"));
+                var offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+                respond(exchange, 200, albumPage(artistId, limit, offset));
+                return;
+            }
+            respond(exchange, 404, error(404, "Service not found"));
+        }
+    }
+
+    /**
+     * answers the request with a 429 or a 503 at the configured rates
+     *
+     * @return true if the request was answered
+     */
+    private boolean injectFailure(HttpExchange exchange) throws IOException {
+        var random = ThreadLocalRandom.current().nextDouble();
+        if (random < options.getRateLimitRate()) {
+            rateLimited.increment();
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(options.getRetryAfter().toSeconds()));
+            respond(exchange, 429, error(429, "API rate limit exceeded"));
+            return true;
+        }
+        if (random < options.getRateLimitRate() + options.getErrorRate()) {
+            failed.increment();
+            respond(exchange, 503, error(503, "Service unavailable"));
+            return true;
+        }
+        return false;
+    }
+
+    private SpotifyAlbumsResponse albumPage(String artistId, int limit, int offset) {
+        var total = options.getAlbumsPerArtist();
+        var end = Math.min(total, offset + limit);
+        var href = getApiUrl() + "/artists/" + artistId + "/albums";
+        return SpotifyAlbumsResponse.builder()
+                .href(href + "?limit=" + limit + "&offset=" + offset)
+                .limit(limit)
+                .offset(offset)
+                .total(total)
+                .next(end < total ? href + "?limit=" + limit + "&offset=" + end : null)
+                .items(IntStream.range(Math.min(offset, end), end).mapToObj(index -> album(artistId, index)).toList())
+                .build();
+    }
+
+    private SpotifyAlbum album(String artistId, int index) {
+        var id = artistId + "-album-" + index;
+        return SpotifyAlbum.builder()
+                .id(id)
+                .name("album " + index + " of " + artistId)
+                .album_type("album")
+                .album_group("album")
+                .type("album")
+                .total_tracks(8 + index % 8)
+                .release_date(String.valueOf(1970 + index % 50))
+                .release_date_precision("year")
+                .available_markets(MARKETS)
+                .href(getApiUrl() + "/albums/" + id)
+                .uri("spotify:album:" + id)
+                .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/album/" + id).build())
+                .images(images(id))
+                .artists(List.of(SpotifyAlbum.SimplifiedArtist.builder()
+                        .id(artistId)
+                        .name("artist " + artistId)
+                        .type("artist")
+                        .href(getApiUrl() + "/artists/" + artistId)
+                        .uri("spotify:artist:" + artistId)
+                        .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/artist/" + artistId).build())
+                        .build()))
+                .build();
+    }
+
+    private SpotifyArtist artist(String artistId) {
+        return SpotifyArtist.builder()
+                .id(artistId)
+                .name("artist " + artistId)
+                .type("artist")
+                .popularity(Math.floorMod(artistId.hashCode(), 100))
+                .followers(SpotifyArtist.SpotifyFollowers.builder().total(Math.floorMod(artistId.hashCode(), 1_000_000)).build())
+                .genres(List.of("rock", "pop"))
+                .href(getApiUrl() + "/artists/" + artistId)
+                .uri("spotify:artist:" + artistId)
+                .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/artist/" + artistId).build())
+                .images(images(artistId))
+                .build();
+    }
+
+    private static List<SpotifyImage> images(String id) {
+        return List.of(640, 300, 64).stream()
+                .map(size -> SpotifyImage.builder().url("https://i.scdn.co/image/" + id + "-" + size).width(size).height(size).build())
+                .toList();
+    }
+
+    private static SpotifyApiErrorResponse error(int status, String message) {
+        return SpotifyApiErrorResponse.builder()
+                .error(SpotifyApiErrorResponse.ErrorBody.builder().status(status).message(message).build())
+                .build();
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        var bytes = objectMapper.writeValueAsBytes(body);
+        var acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            var gzipped = new ByteArrayOutputStream();
+            try (var gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(bytes);
+            }
+            bytes = gzipped.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> queryOf(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        var query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            var separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Value
+    @Builder
+    public static class Options {
+        /**
+         * every artist of the catalog has this many albums
+         */
+        @Builder.Default
+        int albumsPerArtist = 100;
+        /**
+         * how long every request to the web api takes before it is answered
+         */
+        @Builder.Default
+        Duration latency = Duration.ZERO;
+        /**
+         * the share of requests that are answered with 503
+         */
+        @Builder.Default
+        double errorRate = 0;
+        /**
+         * the share of requests that are answered with 429
+         */
+        @Builder.Default
+        double rateLimitRate = 0;
+        @Builder.Default
+        Duration retryAfter = Duration.ofSeconds(1);
+        @Builder.Default
+        Duration tokenLifetime = Duration.ofHours(1);
+    }
+}
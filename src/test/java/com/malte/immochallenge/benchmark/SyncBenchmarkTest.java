@@ -0,0 +1,138 @@
+package com.malte.immochallenge.benchmark;
+
+import com.malte.immochallenge.DataFetchingService;
+import com.malte.immochallenge.spotify.SpotifyConfiguration;
+import com.malte.immochallenge.sync.SyncConfiguration;
+import com.malte.immochallenge.sync.SyncJournal;
+import com.malte.immochallenge.sync.SyncPlanner;
+import com.malte.immochallenge.sync.model.SyncRun;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * measures a whole synchronization, from the api calls to the rows in the database, against the spotify stub
+ * server and an embedded postgres. every catalog is synchronized in about {@link #RUNS_PER_CATALOG} runs, the
+ * percentiles of the phases are taken over the runs recorded in the sync journal.
+ * the allocation rate includes the stub server, it runs in the same jvm.
+ * run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+class SyncBenchmarkTest {
+    private static final int ALBUMS_PER_ARTIST = 100;
+    private static final int RUNS_PER_CATALOG = 20;
+    // failed artists stay due, the extra runs retry them
+    private static final int MAX_RUNS_PER_CATALOG = RUNS_PER_CATALOG * 3;
+    private static final int WARMUP_ALBUMS = 5_000;
+
+    static SpotifyStubServer stubServer;
+    static BenchmarkApplication application;
+
+    @BeforeAll
+    static void start() throws IOException {
+        stubServer = SpotifyStubServer.start(SpotifyStubServer.Options.builder()
+                .albumsPerArtist(ALBUMS_PER_ARTIST)
+                .latency(Duration.ofMillis(5))
+                .errorRate(0.001)
+                .rateLimitRate(0.0005)
+                .build());
+        application = BenchmarkApplication.start(
+                "spotify.token-url=" + stubServer.getTokenUrl(),
+                "spotify.api-url=" + stubServer.getApiUrl(),
+                // the pipeline is measured, not the pacing of the requests
+                "spotify.requests-per-second=0");
+        synchronize("warmup", WARMUP_ALBUMS);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        if (application != null) {
+            application.close();
+        }
+        if (stubServer != null) {
+            stubServer.close();
+        }
+    }
+
+    @ParameterizedTest(name = "{0} albums")
+    @ValueSource(ints = {100, 10_000, 100_000})
+    @DisplayName("synchronize a catalog")
+    void synchronize(int albums) {
+        var result = synchronize("catalog" + albums, albums);
+
+        assertThat(result.persistedAlbums()).isEqualTo(albums);
+        System.out.printf(Locale.ROOT, "%d albums in %d runs: %.0f albums/s, %.1f MB/s allocated, %.1f KB per album%n",
+                albums, result.runs().size(), albums / result.seconds(), result.allocatedBytes() / result.seconds() / 1e6,
+                result.allocatedBytes() / 1e3 / albums);
+        printPhase("fetch", result.runs(), SyncRun::getFetchMillis);
+        printPhase("map", result.runs(), SyncRun::getMapMillis);
+        printPhase("persist", result.runs(), SyncRun::getPersistMillis);
+        System.out.printf(Locale.ROOT, "  stub: %d requests, %d rate limited, %d failed%n",
+                stubServer.getRequests(), stubServer.getRateLimited(), stubServer.getFailed());
+    }
+
+    /**
+     * synchronizes a new catalog of the given size until no artist is due any more
+     */
+    private static Result synchronize(String name, int albums) {
+        var jdbcTemplate = application.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("TRUNCATE artist, artist_images, album, album_images, album_artists, artist_sync_schedule, sync_run");
+        var artistCount = Math.ceilDiv(albums, ALBUMS_PER_ARTIST);
+        application.getBean(SpotifyConfiguration.class).setArtistIds(IntStream.range(0, artistCount)
+                .mapToObj(index -> name + "-artist-" + index)
+                .toList());
+        application.getBean(SyncConfiguration.class).setBatchSize(Math.ceilDiv(artistCount, RUNS_PER_CATALOG));
+        stubServer.resetCounters();
+
+        var dataFetchingService = application.getBean(DataFetchingService.class);
+        var syncPlanner = application.getBean(SyncPlanner.class);
+        var allocations = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var allocatedBefore = allocations.getTotalThreadAllocatedBytes();
+        var started = System.nanoTime();
+        var runs = 0;
+        while (runs < MAX_RUNS_PER_CATALOG && !syncPlanner.getArtistIdsDueForSync(LocalDateTime.now()).isEmpty()) {
+            dataFetchingService.getSpotifyDataPeriodically();
+            runs++;
+        }
+        var seconds = (System.nanoTime() - started) / 1e9;
+        var allocatedBytes = allocations.getTotalThreadAllocatedBytes() - allocatedBefore;
+
+        var persistedAlbums = jdbcTemplate.queryForObject("SELECT count(*) FROM album", Long.class);
+        var journal = application.getBean(SyncJournal.class).getRecentRuns(MAX_RUNS_PER_CATALOG);
+        return new Result(persistedAlbums == null ? 0 : persistedAlbums, seconds, allocatedBytes, journal);
+    }
+
+    private static void printPhase(String phase, List<SyncRun> runs, ToLongFunction<SyncRun> millis) {
+        var sorted = runs.stream().mapToLong(millis).sorted().toArray();
+        System.out.printf(Locale.ROOT, "  %-8s p50 %6d ms  p99 %6d ms per run%n", phase, percentile(sorted, 0.5), percentile(sorted, 0.99));
+    }
+
+    /**
+     * nearest rank percentile of sorted values
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        var rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.clamp(rank - 1, 0, sorted.length - 1)];
+    }
+
+    private record Result(long persistedAlbums, double seconds, long allocatedBytes, List<SyncRun> runs) {
+    }
+}
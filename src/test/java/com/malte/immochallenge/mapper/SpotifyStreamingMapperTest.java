@@ -0,0 +1,128 @@
+package com.malte.immochallenge.mapper;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malte.immochallenge.spotify.model.SpotifyAlbum;
+import com.malte.immochallenge.spotify.model.SpotifyArtist;
+import com.malte.immochallenge.spotify.model.SpotifyExternalUrls;
+import com.malte.immochallenge.spotify.model.SpotifyImage;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyArtistsResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpotifyStreamingMapperTest {
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("albums should be read like the spotify model classes are mapped")
+    void readAlbumPage1() throws IOException {
+        var restrictedAlbum = getSpotifyAlbum("2");
+        restrictedAlbum.setRestrictions(new SpotifyAlbum.Restrictions("market"));
+        var albums = List.of(getSpotifyAlbum("1"), restrictedAlbum);
+        var body = mapper.writeValueAsBytes(SpotifyAlbumsResponse.builder().items(albums).next("next url").build());
+
+        var page = SpotifyStreamingMapper.readAlbumPage(body);
+
+        assertThat(page.next()).isEqualTo("next url");
+        assertThat(page.items()).isEqualTo(albums.stream().map(SpotifyApiMapper::albumFromSpotify).toList());
+        assertThat(page.items().get(1).getRestrictionReason()).isEqualTo("market");
+    }
+
+    @Test
+    @DisplayName("unknown fields, nulls and the last page should be handled")
+    void readAlbumPage2() throws IOException {
+        var body = """
+                {"items": [{"id": "1", "unknown": {"nested": [1, 2, {"a": null}]}, "images": null, "restrictions": null,
+                "external_urls": {"spotify": null}}, null], "next": null, "total": 1}
+                """.getBytes(StandardCharsets.UTF_8);
+
+        var page = SpotifyStreamingMapper.readAlbumPage(body);
+
+        assertThat(page.next()).isNull();
+        assertThat(page.items()).hasSize(1);
+        assertThat(page.items().getFirst().getSpotifyId()).isEqualTo("1");
+        assertThat(page.items().getFirst().getImages()).isEmpty();
+        assertThat(page.items().getFirst().getExternalUrl()).isNull();
+    }
+
+    @Test
+    @DisplayName("a body that is not an object should fail")
+    void readAlbumPage3() {
+        assertThatThrownBy(() -> SpotifyStreamingMapper.readAlbumPage("[]".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    @DisplayName("artists should be read like the spotify model classes are mapped, unknown ids are skipped")
+    void readArtists1() throws IOException {
+        var artists = new ArrayList<SpotifyArtist>();
+        artists.add(getSpotifyArtist());
+        artists.add(null);
+        var body = mapper.writeValueAsBytes(SpotifyArtistsResponse.builder().artists(artists).build());
+
+        var page = SpotifyStreamingMapper.readArtists(body);
+
+        assertThat(page.items()).containsExactly(SpotifyApiMapper.artistFromSpotify(getSpotifyArtist()));
+    }
+
+    @Test
+    @DisplayName("a response without artists should have no items")
+    void readArtists2() throws IOException {
+        assertThat(SpotifyStreamingMapper.readArtists("{}".getBytes(StandardCharsets.UTF_8)).items()).isNull();
+    }
+
+    private SpotifyArtist getSpotifyArtist() {
+        return SpotifyArtist.builder()
+                .id("id")
+                .href("href")
+                .uri("uri")
+                .name("name")
+                .type("artist")
+                .popularity(1)
+                .external_urls(SpotifyExternalUrls.builder().spotify("externalUrl").build())
+                .followers(SpotifyArtist.SpotifyFollowers.builder().href(null).total(100L).build())
+                .genres(List.of("genre", "other genre"))
+                .images(List.of(SpotifyImage.builder().url("imageUrl").width(10).height(15).build()))
+                .build();
+    }
+
+    private SpotifyAlbum getSpotifyAlbum(String id) {
+        return SpotifyAlbum.builder()
+                .id(id)
+                .name("name")
+                .album_type("album")
+                .total_tracks(5)
+                // the api sends every market the album is available in
+                .available_markets(Arrays.asList(Locale.getISOCountries()))
+                .release_date("releaseDate")
+                .release_date_precision("day")
+                .album_group("album")
+                .artists(List.of(SpotifyAlbum.SimplifiedArtist.builder()
+                        .external_urls(SpotifyExternalUrls.builder().spotify("externalUrl").build())
+                        .href("href")
+                        .id("artistId")
+                        .name("name")
+                        .type("artist")
+                        .uri("uri")
+                        .build()))
+                .images(List.of(SpotifyImage.builder().url("image url").width(640).height(640).build(),
+                        SpotifyImage.builder().url("small image url").width(64).height(64).build()))
+                .type("album")
+                .href("href")
+                .uri("uri")
+                .external_urls(SpotifyExternalUrls.builder().spotify("externalUrl").build())
+                .build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.malte.immochallenge.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchKeyNormalizerTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "Beyoncé,beyonce",
+            "Sigur Rós,sigur ros",
+            "'  BEYONCÉ ',beyonce",
+            "'Sigur\tRós',sigur ros",
+            "AC/DC,ac dc",
+            "Jay-Z,jay z",
+            "'Guns N'' Roses',guns n roses",
+            "Don’t Stop Me Now,dont stop me now",
+            "Mötley Crüe,motley crue",
+            "Straße,strasse",
+            "Røyksopp,royksopp",
+            "Łódź,lodz",
+            "ﬁve,five",
+            "Ⅳ,iv",
+            "Björk: Homogenic (Remastered),bjork homogenic remastered",
+            "東京事変,東京事変"
+    })
+    @DisplayName("names should be folded to lower case without accents, apostrophes and other punctuation")
+    void normalize1(String name, String expected) {
+        assertThat(SearchKeyNormalizer.normalize(name)).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("names without anything to search for should be folded to an empty key")
+    void normalize2() {
+        assertThat(SearchKeyNormalizer.normalize(null)).isEmpty();
+        assertThat(SearchKeyNormalizer.normalize("")).isEmpty();
+        assertThat(SearchKeyNormalizer.normalize(" ?! ")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("a folded key should stay the same when it is folded again")
+    void normalize3() {
+        var key = SearchKeyNormalizer.normalize("Sigur Rós – Ágætis byrjun");
+
+        assertThat(key).isEqualTo("sigur ros agaetis byrjun");
+        assertThat(SearchKeyNormalizer.normalize(key)).isEqualTo(key);
+    }
+}
@@ -0,0 +1,56 @@
+package com.malte.immochallenge.search;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AfterCommitTest {
+
+    List<String> updates = new ArrayList<>();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("the update should wait for the commit")
+    void run1() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(() -> updates.add("indexed"));
+
+        assertThat(updates).isEmpty();
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        assertThat(updates).containsExactly("indexed");
+    }
+
+    @Test
+    @DisplayName("the update should be dropped on a rollback")
+    void run2() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(() -> updates.add("indexed"));
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(updates).isEmpty();
+    }
+
+    @Test
+    @DisplayName("the update should run right away without a transaction")
+    void run3() {
+        AfterCommit.run(() -> updates.add("indexed"));
+
+        assertThat(updates).containsExactly("indexed");
+    }
+}
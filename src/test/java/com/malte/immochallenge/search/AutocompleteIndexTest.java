@@ -0,0 +1,78 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.model.SearchKeyNormalizer;
+import com.malte.immochallenge.search.SearchIndex.Type;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class AutocompleteIndexTest {
+
+    SearchConfiguration configuration = new SearchConfiguration();
+    AutocompleteIndex autocompleteIndex;
+
+    @BeforeEach
+    void setUp() {
+        autocompleteIndex = new AutocompleteIndex(mock(JdbcTemplate.class), configuration);
+        autocompleteIndex.replace(List.of(
+                entry(Type.ARTIST, 1L, "Sigur Rós"),
+                entry(Type.ARTIST, 2L, "Beyoncé"),
+                entry(Type.ALBUM, 3L, "Sigur Rós"),
+                entry(Type.ALBUM, 4L, "Lemonade")), autocompleteIndex.currentVersion());
+    }
+
+    @Test
+    @DisplayName("names should be found regardless of case and accents")
+    void complete1() {
+        assertThat(autocompleteIndex.complete("sigur r")).containsExactly(
+                new AutocompleteSuggestion(1L, "Sigur Rós", Type.ARTIST),
+                new AutocompleteSuggestion(3L, "Sigur Rós", Type.ALBUM));
+        assertThat(autocompleteIndex.complete("BEYON")).containsExactly(new AutocompleteSuggestion(2L, "Beyoncé", Type.ARTIST));
+        assertThat(autocompleteIndex.complete(" ")).isEmpty();
+        assertThat(autocompleteIndex.complete(null)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("the number of suggestions should be limited")
+    void complete2() {
+        configuration.setAutocompleteLimit(1);
+
+        assertThat(autocompleteIndex.complete("sigur")).containsExactly(new AutocompleteSuggestion(1L, "Sigur Rós", Type.ARTIST));
+    }
+
+    @Test
+    @DisplayName("manual changes should be found before the next rebuild")
+    void complete3() {
+        autocompleteIndex.put(Type.ALBUM, 5L, "Lemon Incest");
+        autocompleteIndex.put(Type.ALBUM, 4L, "Renamed");
+        autocompleteIndex.remove(Type.ARTIST, 1L);
+
+        assertThat(autocompleteIndex.complete("lemon")).containsExactly(new AutocompleteSuggestion(5L, "Lemon Incest", Type.ALBUM));
+        assertThat(autocompleteIndex.complete("ren")).containsExactly(new AutocompleteSuggestion(4L, "Renamed", Type.ALBUM));
+        assertThat(autocompleteIndex.complete("sigur")).containsExactly(new AutocompleteSuggestion(3L, "Sigur Rós", Type.ALBUM));
+    }
+
+    @Test
+    @DisplayName("a rebuild should only drop the manual changes that were made before it read the database")
+    void replace1() {
+        autocompleteIndex.put(Type.ALBUM, 5L, "Lemon Incest");
+        var version = autocompleteIndex.currentVersion();
+        // made while the database was read
+        autocompleteIndex.put(Type.ALBUM, 6L, "Lemon Tree");
+
+        autocompleteIndex.replace(List.of(entry(Type.ALBUM, 5L, "Lemon Incest")), version);
+
+        assertThat(autocompleteIndex.size()).isEqualTo(1);
+        assertThat(autocompleteIndex.complete("lemon")).extracting(AutocompleteSuggestion::id).containsExactly(5L, 6L);
+    }
+
+    private static PrefixIndex.Entry entry(Type type, long id, String name) {
+        return new PrefixIndex.Entry(SearchKeyNormalizer.normalize(name), type, id, name);
+    }
+}
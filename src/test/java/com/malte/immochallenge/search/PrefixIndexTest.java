@@ -0,0 +1,103 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.search.SearchIndex.Type;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixIndexTest {
+
+    @Test
+    @DisplayName("names should be found by prefix in the order of their keys")
+    void find1() {
+        var index = PrefixIndex.of(List.of(
+                entry("radiohead", Type.ARTIST, 1L, "Radiohead"),
+                entry("rainbow", Type.ARTIST, 2L, "Rainbow"),
+                entry("ok computer", Type.ALBUM, 3L, "OK Computer"),
+                entry("radio ga ga", Type.ALBUM, 4L, "Radio Ga Ga"),
+                entry("radio", Type.ALBUM, 5L, "Radio")));
+
+        assertThat(index.find("radio", 10, ref -> true)).containsExactly(
+                new AutocompleteSuggestion(5L, "Radio", Type.ALBUM),
+                new AutocompleteSuggestion(4L, "Radio Ga Ga", Type.ALBUM),
+                new AutocompleteSuggestion(1L, "Radiohead", Type.ARTIST));
+        assertThat(index.find("ok", 10, ref -> true)).containsExactly(new AutocompleteSuggestion(3L, "OK Computer", Type.ALBUM));
+        assertThat(index.find("x", 10, ref -> true)).isEmpty();
+        assertThat(index.find("a", 10, ref -> true)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("matches spanning several blocks should all be found")
+    void find2() {
+        var entries = IntStream.range(0, PrefixIndex.BLOCK_SIZE * 5)
+                .mapToObj(i -> entry("name %03d".formatted(i), Type.ALBUM, i, "Name " + i))
+                .toList();
+        var index = PrefixIndex.of(entries);
+
+        assertThat(index.size()).isEqualTo(PrefixIndex.BLOCK_SIZE * 5);
+        assertThat(index.find("name", 1000, ref -> true)).hasSize(PrefixIndex.BLOCK_SIZE * 5);
+        assertThat(index.find("name 04", 1000, ref -> true))
+                .extracting(AutocompleteSuggestion::id)
+                .containsExactly(40L, 41L, 42L, 43L, 44L, 45L, 46L, 47L, 48L, 49L);
+        assertThat(index.find("name 079", 1000, ref -> true)).extracting(AutocompleteSuggestion::id).containsExactly(79L);
+    }
+
+    @Test
+    @DisplayName("the limit should only count accepted entries")
+    void find3() {
+        var index = PrefixIndex.of(List.of(
+                entry("abba", Type.ARTIST, 1L, "ABBA"),
+                entry("abba gold", Type.ALBUM, 1L, "ABBA Gold"),
+                entry("abbey road", Type.ALBUM, 2L, "Abbey Road")));
+
+        assertThat(index.find("abb", 2, ref -> true)).extracting(AutocompleteSuggestion::name)
+                .containsExactly("ABBA", "ABBA Gold");
+        assertThat(index.find("abb", 2, ref -> ref != PrefixIndex.refOf(Type.ALBUM, 1L)))
+                .extracting(AutocompleteSuggestion::name)
+                .containsExactly("ABBA", "Abbey Road");
+    }
+
+    @Test
+    @DisplayName("names with the same key and names beyond ascii should be kept")
+    void find4() {
+        var index = PrefixIndex.of(List.of(
+                entry("greatest hits", Type.ALBUM, 7L, "Greatest Hits"),
+                entry("greatest hits", Type.ALBUM, 3L, "GREATEST HITS"),
+                entry("bjork", Type.ARTIST, 4L, "Björk"),
+                entry("東京事変", Type.ARTIST, 5L, "東京事変")));
+
+        assertThat(index.find("greatest", 10, ref -> true)).extracting(AutocompleteSuggestion::id).containsExactly(3L, 7L);
+        assertThat(index.find("bj", 10, ref -> true)).containsExactly(new AutocompleteSuggestion(4L, "Björk", Type.ARTIST));
+        assertThat(index.find("東京", 10, ref -> true)).extracting(AutocompleteSuggestion::id).containsExactly(5L);
+    }
+
+    @Test
+    @DisplayName("an empty index should find nothing")
+    void find5() {
+        var index = PrefixIndex.of(List.of());
+
+        assertThat(index.size()).isZero();
+        assertThat(index.find("a", 10, ref -> true)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("front coding should take less memory than the keys")
+    void memoryBytes1() {
+        var entries = IntStream.range(0, 10_000)
+                .mapToObj(i -> entry("a long common beginning " + i, Type.ALBUM, i, ""))
+                .toList();
+        var keyBytes = entries.stream().mapToLong(entry -> entry.key().length()).sum();
+
+        var index = PrefixIndex.of(entries);
+
+        assertThat(index.memoryBytes()).isLessThan(keyBytes);
+    }
+
+    private static PrefixIndex.Entry entry(String key, Type type, long id, String name) {
+        return new PrefixIndex.Entry(key, type, id, name);
+    }
+}
@@ -0,0 +1,133 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.album.model.SimplifiedArtist;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.search.SearchIndex.Type;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    SearchConfiguration configuration = new SearchConfiguration();
+    SearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        configuration.setIndexDirectory(directory.toString());
+        searchIndex = new SearchIndex(configuration);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        searchIndex.close();
+    }
+
+    @Test
+    @DisplayName("artists should be found by name and genre regardless of case and accents")
+    void search1() {
+        searchIndex.indexArtists(List.of(artist(1L, "Sigur Rós", List.of("post-rock")), artist(2L, "Radiohead", List.of("art rock"))));
+        searchIndex.refresh();
+
+        assertThat(searchIndex.search(Type.ARTIST, "sigur ros", 10)).containsExactly(1L);
+        assertThat(searchIndex.search(Type.ARTIST, "ROCK", 10)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(searchIndex.search(Type.ALBUM, "radiohead", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("albums named after the search term should rank above albums of an artist with that name")
+    void search2() {
+        searchIndex.indexAlbums(List.of(album(1L, "Kid A", "Radiohead"), album(2L, "Radiohead Live", "Someone Else")));
+        searchIndex.refresh();
+
+        assertThat(searchIndex.search(Type.ALBUM, "radiohead", 10)).containsExactly(2L, 1L);
+    }
+
+    @Test
+    @DisplayName("every word should match and the last word should also match as a prefix")
+    void search3() {
+        searchIndex.indexAlbums(List.of(album(1L, "The Dark Side of the Moon", "Pink Floyd"), album(2L, "Dark Matter", "Pearl Jam")));
+        searchIndex.refresh();
+
+        assertThat(searchIndex.search(Type.ALBUM, "dark mo", 10)).containsExactly(1L);
+        assertThat(searchIndex.search(Type.ALBUM, "dark pearl", 10)).containsExactly(2L);
+    }
+
+    @Test
+    @DisplayName("changes should replace the entry and removed entries should not be found after a refresh")
+    void search4() {
+        searchIndex.indexArtist(artist(1L, "Old Name", List.of()));
+        searchIndex.refresh();
+        searchIndex.indexArtist(artist(1L, "New Name", List.of()));
+        searchIndex.indexArtist(artist(2L, "Other", List.of()));
+        searchIndex.remove(Type.ARTIST, 2L);
+        searchIndex.refresh();
+
+        assertThat(searchIndex.search(Type.ARTIST, "old", 10)).isEmpty();
+        assertThat(searchIndex.search(Type.ARTIST, "new", 10)).containsExactly(1L);
+        assertThat(searchIndex.search(Type.ARTIST, "other", 10)).isEmpty();
+        assertThat(searchIndex.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("committed entries should still be found after the index was opened again")
+    void search5() throws IOException {
+        searchIndex.indexArtist(artist(1L, "Radiohead", List.of()));
+        searchIndex.commit();
+        searchIndex.close();
+
+        searchIndex = new SearchIndex(configuration);
+
+        assertThat(searchIndex.search(Type.ARTIST, "radiohead", 10)).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("without a directory nothing should be indexed or found")
+    void search6() throws IOException {
+        searchIndex.close();
+        searchIndex = new SearchIndex(new SearchConfiguration());
+
+        searchIndex.indexArtist(artist(1L, "Radiohead", List.of()));
+        searchIndex.refresh();
+
+        assertThat(searchIndex.isEnabled()).isFalse();
+        assertThat(searchIndex.search(Type.ARTIST, "radiohead", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("the ids of a type should contain the changes that are not visible yet and no removed entries")
+    void ids1() {
+        searchIndex.indexArtist(artist(1L, "Radiohead", List.of()));
+        searchIndex.indexArtist(artist(2L, "Portishead", List.of()));
+        searchIndex.index(Type.ALBUM, 3L, "OK Computer", null, "Radiohead");
+        searchIndex.remove(Type.ARTIST, 2L);
+
+        assertThat(searchIndex.ids(Type.ARTIST)).containsExactly(1L);
+        assertThat(searchIndex.ids(Type.ALBUM)).containsExactly(3L);
+    }
+
+    private static Artist artist(long id, String name, List<String> genres) {
+        return Artist.builder().id(id).spotifyId("artist" + id).name(name).genres(genres).build();
+    }
+
+    private static Album album(long id, String name, String artistName) {
+        return Album.builder()
+                .id(id)
+                .spotifyId("album" + id)
+                .name(name)
+                .artists(List.of(SimplifiedArtist.builder().name(artistName).build()))
+                .build();
+    }
+}
@@ -0,0 +1,198 @@
+package com.malte.immochallenge.search;
+
+import com.malte.immochallenge.album.AlbumRepository;
+import com.malte.immochallenge.album.AlbumService;
+import com.malte.immochallenge.album.model.Album;
+import com.malte.immochallenge.artist.ArtistService;
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.artist.repository.ArtistRepository;
+import com.malte.immochallenge.search.SearchIndex.Type;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SearchServiceTest {
+
+    @Mock
+    SearchIndex searchIndex;
+
+    @Mock
+    SearchConfiguration searchConfiguration;
+
+    @Mock
+    ArtistRepository artistRepository;
+
+    @Mock
+    AlbumRepository albumRepository;
+
+    @Mock
+    ArtistService artistService;
+
+    @Mock
+    AlbumService albumService;
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    SearchService searchService;
+
+    @Test
+    @DisplayName("the matches should be loaded by id in the order of their relevance")
+    void searchFullText1() {
+        when(searchConfiguration.getResultLimit()).thenReturn(10);
+        when(searchIndex.search(Type.ARTIST, "radiohead", 10)).thenReturn(List.of(2L, 1L));
+        when(searchIndex.search(Type.ALBUM, "radiohead", 10)).thenReturn(List.of(3L));
+        var first = Artist.builder().id(1L).name("first").build();
+        var second = Artist.builder().id(2L).name("second").build();
+        var album = Album.builder().id(3L).name("album").build();
+        when(artistRepository.findAllById(List.of(2L, 1L))).thenReturn(List.of(first, second));
+        when(albumRepository.findAllById(List.of(3L))).thenReturn(List.of(album));
+
+        var result = searchService.searchFullText("radiohead");
+
+        assertThat(result.artists()).containsExactly(second, first);
+        assertThat(result.albums()).containsExactly(album);
+    }
+
+    @Test
+    @DisplayName("matches that were deleted from the database in the meantime should be skipped")
+    void searchFullText2() {
+        when(searchIndex.search(Type.ARTIST, "radiohead", 1)).thenReturn(List.of(1L, 2L));
+        when(searchIndex.search(Type.ALBUM, "radiohead", 1)).thenReturn(List.of());
+        var artist = Artist.builder().id(2L).build();
+        when(artistRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(artist));
+
+        var result = searchService.searchFullText("radiohead");
+
+        assertThat(result.artists()).containsExactly(artist);
+        assertThat(result.albums()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("an empty search term should find nothing")
+    void searchFullText3() {
+        var result = searchService.searchFullText(" ");
+
+        assertThat(result).isEqualTo(FullTextSearchResult.empty());
+        verify(searchIndex, never()).search(any(), anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("artists and albums should be searched with their own limits and ranked in one list")
+    void search1() {
+        when(searchConfiguration.getArtistLimit()).thenReturn(5);
+        when(searchConfiguration.getAlbumLimit()).thenReturn(7);
+        var artist = Artist.builder().id(1L).name("Radiohead").build();
+        var liveAlbum = Album.builder().id(2L).name("Radiohead Live").build();
+        var otherAlbum = Album.builder().id(3L).name("The Best of Radiohead").build();
+        when(artistService.searchForArtist("Radiohead", 5)).thenReturn(List.of(artist));
+        when(albumService.searchForAlbum("Radiohead", 7)).thenReturn(List.of(otherAlbum, liveAlbum));
+
+        var result = searchService.search("Radiohead");
+
+        assertThat(result.hits())
+                .extracting(SearchHit::type, SearchHit::id)
+                .containsExactly(tuple(Type.ARTIST, 1L), tuple(Type.ALBUM, 2L), tuple(Type.ALBUM, 3L));
+        assertThat(result.hits().getFirst().artist()).isEqualTo(artist);
+        assertThat(result.hits().get(1).album()).isEqualTo(liveAlbum);
+    }
+
+    @Test
+    @DisplayName("accented names should be ranked by their search key")
+    void search4() {
+        var artist = Artist.builder().id(1L).name("Beyoncé").searchKey("beyonce").build();
+        var album = Album.builder().id(2L).name("Beyoncé Live").build();
+        when(artistService.searchForArtist(anyString(), anyInt())).thenReturn(List.of(artist));
+        when(albumService.searchForAlbum(anyString(), anyInt())).thenReturn(List.of(album));
+
+        var result = searchService.search("BEYONCÉ");
+
+        assertThat(result.hits()).extracting(SearchHit::id).containsExactly(1L, 2L);
+        assertThat(result.hits().getFirst().score()).isEqualTo(4.0);
+    }
+
+    @Test
+    @DisplayName("a search term without anything to search for should find nothing")
+    void search2() {
+        var result = searchService.search("?!");
+
+        assertThat(result).isEqualTo(SearchResult.empty());
+        verify(artistService, never()).searchForArtist(anyString(), anyInt());
+        verify(albumService, never()).searchForAlbum(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("a failing lookup should fail the search")
+    void search3() {
+        when(artistService.searchForArtist(anyString(), anyInt())).thenThrow(new IllegalStateException("database down"));
+        lenient().when(albumService.searchForAlbum(anyString(), anyInt())).thenReturn(List.of());
+
+        assertThatThrownBy(() -> searchService.search("radiohead"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database down");
+    }
+
+    @Test
+    @DisplayName("exact names should score above names starting with the term above names containing it")
+    void scoreOf1() {
+        assertThat(SearchHit.scoreOf("moon", "moon")).isGreaterThan(SearchHit.scoreOf("moon", "moonlight"));
+        assertThat(SearchHit.scoreOf("moon", "moonlight")).isGreaterThan(SearchHit.scoreOf("moon", "dark moon"));
+        assertThat(SearchHit.scoreOf("moon", "dark moon")).isGreaterThan(SearchHit.scoreOf("moon", "honeymoon"));
+        assertThat(SearchHit.scoreOf("moon", "dark moon")).isGreaterThan(SearchHit.scoreOf("moon", "the dark side of the moon"));
+        assertThat(SearchHit.scoreOf("moon", null)).isZero();
+    }
+
+    @Test
+    @DisplayName("a disabled index should not be reconciled")
+    void reconcileIndex1() {
+        searchService.reconcileIndex();
+
+        verify(jdbcTemplate, never()).getDataSource();
+    }
+
+    @Test
+    @DisplayName("entries whose row is gone should be removed, rows inserted in the meantime should be kept")
+    void removeDeleted1() {
+        when(searchIndex.ids(Type.ALBUM)).thenReturn(Set.of(1L, 2L, 3L));
+        when(jdbcTemplate.queryForList(eq("SELECT id FROM album WHERE id = ANY(?)"), eq(Long.class), any(Object.class)))
+                .thenReturn(List.of(2L));
+
+        var removed = searchService.removeDeleted(Type.ALBUM, Set.of(1L));
+
+        assertThat(removed).isEqualTo(1);
+        verify(searchIndex).remove(Type.ALBUM, 3L);
+        verify(searchIndex, never()).remove(Type.ALBUM, 2L);
+        verify(searchIndex, never()).remove(Type.ALBUM, 1L);
+    }
+
+    @Test
+    @DisplayName("an index without unread entries should not look anything up")
+    void removeDeleted2() {
+        when(searchIndex.ids(Type.ARTIST)).thenReturn(Set.of(1L));
+
+        assertThat(searchService.removeDeleted(Type.ARTIST, Set.of(1L, 2L))).isZero();
+
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Long.class), any(Object.class));
+    }
+}
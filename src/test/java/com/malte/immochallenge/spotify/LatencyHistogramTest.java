@@ -0,0 +1,47 @@
+package com.malte.immochallenge.spotify;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("percentiles should be at most one bucket above the recorded latencies")
+    void percentile1() {
+        var histogram = new LatencyHistogram(Duration.ofMinutes(1));
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(Duration.ofMillis(millis));
+        }
+
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.percentile(0.5)).isBetween(Duration.ofMillis(50), Duration.ofMillis(60));
+        assertThat(histogram.percentile(0.99)).isBetween(Duration.ofMillis(99), Duration.ofMillis(119));
+        assertThat(histogram.percentile(1)).isBetween(Duration.ofMillis(100), Duration.ofMillis(120));
+    }
+
+    @Test
+    @DisplayName("an empty histogram should report no latency")
+    void percentile2() {
+        var histogram = new LatencyHistogram(Duration.ofMinutes(1));
+
+        assertThat(histogram.count()).isZero();
+        assertThat(histogram.percentile(0.95)).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    @DisplayName("latencies older than two windows should be forgotten")
+    void record1() throws InterruptedException {
+        var histogram = new LatencyHistogram(Duration.ofMillis(50));
+        histogram.record(Duration.ofSeconds(5));
+
+        Thread.sleep(150);
+        histogram.record(Duration.ofMillis(1));
+
+        assertThat(histogram.count()).isEqualTo(1);
+        assertThat(histogram.percentile(1)).isLessThan(Duration.ofMillis(2));
+    }
+}
@@ -3,6 +3,7 @@ package com.malte.immochallenge.spotify;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.malte.immochallenge.spotify.exception.SpotifyAuthException;
+import com.malte.immochallenge.spotify.model.SpotifyAccessToken;
 import com.malte.immochallenge.spotify.response.SpotifyAccessTokenResponse;
 import com.malte.immochallenge.spotify.response.SpotifyAuthenticationErrorResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,8 +18,21 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
@@ -26,6 +40,7 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
 @RestClientTest(SpotifyAuthService.class)
 class SpotifyAuthServiceTest {
+    private static final String TOKEN_URL = "https://accounts.spotify.com/api/token";
 
     @Autowired
     MockRestServiceServer server;
@@ -42,6 +57,7 @@ class SpotifyAuthServiceTest {
     @BeforeEach
     void resetMockServer() {
         server.reset();
+        when(configuration.getTokenUrl()).thenReturn(TOKEN_URL);
     }
 
     @Test
@@ -53,7 +69,7 @@ class SpotifyAuthServiceTest {
                 .expires_in(1L)
                 .build();
 
-        server.expect(requestTo("https://accounts.spotify.com/api/token"))
+        server.expect(requestTo(TOKEN_URL))
                 .andRespond(withSuccess(mapper.writeValueAsString(response), MediaType.APPLICATION_JSON));
 
         var spotifyToken = spotifyAuthService.getAccessToken();
@@ -76,7 +92,7 @@ class SpotifyAuthServiceTest {
                 .expires_in(1L)
                 .build();
 
-        server.expect(ExpectedCount.max(1), requestTo("https://accounts.spotify.com/api/token"))
+        server.expect(ExpectedCount.max(1), requestTo(TOKEN_URL))
                 .andRespond(withSuccess(mapper.writeValueAsString(response), MediaType.APPLICATION_JSON));
 
         var spotifyToken = spotifyAuthService.getAccessToken();
@@ -93,7 +109,7 @@ class SpotifyAuthServiceTest {
     void getAccessToken3() throws JsonProcessingException {
         SpotifyAuthenticationErrorResponse error = SpotifyAuthenticationErrorResponse.builder().error("Error").error_description("description").build();
 
-        server.expect(requestTo("https://accounts.spotify.com/api/token"))
+        server.expect(requestTo(TOKEN_URL))
                 .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR).body(mapper.writeValueAsString(error)));
 
         assertThatThrownBy(() -> spotifyAuthService.getAccessToken()).isInstanceOf(SpotifyAuthException.class)
@@ -105,7 +121,7 @@ class SpotifyAuthServiceTest {
     @Test
     @DisplayName("should handle errors correctly")
     void getAccessToken4() {
-        server.expect(requestTo("https://accounts.spotify.com/api/token"))
+        server.expect(requestTo(TOKEN_URL))
                 .andRespond(withSuccess("", MediaType.APPLICATION_JSON));
 
         assertThatThrownBy(() -> spotifyAuthService.getAccessToken()).isInstanceOf(SpotifyAuthException.class)
@@ -113,4 +129,108 @@ class SpotifyAuthServiceTest {
 
         server.verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("concurrent callers without a token should share a single request")
+    void getAccessToken5() throws Exception {
+        SpotifyAccessTokenResponse response = SpotifyAccessTokenResponse.builder()
+                .access_token("token")
+                .token_type("type")
+                .expires_in(3600L)
+                .build();
+        var body = mapper.writeValueAsString(response);
+        var callers = 20;
+        var allCalling = new CountDownLatch(callers);
+
+        server.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(request -> {
+                    // keep the request in flight until all callers asked for the token
+                    await(allCalling);
+                    return withSuccess(body, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        List<Future<SpotifyAccessToken>> tokens = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < callers; i++) {
+                tokens.add(executor.submit(() -> {
+                    allCalling.countDown();
+                    return spotifyAuthService.getAccessToken();
+                }));
+            }
+        }
+
+        for (Future<SpotifyAccessToken> token : tokens) {
+            assertThat(token.get().getToken()).isEqualTo("token");
+        }
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should refresh the token in the background before it expires")
+    void getAccessToken6() throws JsonProcessingException {
+        var clock = new MutableClock();
+        spotifyAuthService.setClock(clock);
+        when(configuration.getTokenRefreshMargin()).thenReturn(Duration.ofMinutes(5));
+        var refreshStarted = new CountDownLatch(1);
+        var refreshAnswered = new CountDownLatch(1);
+        var secondResponse = mapper.writeValueAsString(SpotifyAccessTokenResponse.builder()
+                .access_token("second token").token_type("type").expires_in(3600L).build());
+        server.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAccessTokenResponse.builder()
+                        .access_token("first token").token_type("type").expires_in(2L).build()), MediaType.APPLICATION_JSON));
+        server.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(request -> {
+                    refreshStarted.countDown();
+                    await(refreshAnswered);
+                    return withSuccess(secondResponse, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        assertThat(spotifyAuthService.getAccessToken().getToken()).isEqualTo("first token");
+        // the margin is capped at half of the lifetime of the token
+        clock.advance(Duration.ofMillis(1100));
+        // the refresh runs in the background, the caller still gets the token that is about to expire
+        assertThat(spotifyAuthService.getAccessToken().getToken()).isEqualTo("first token");
+        assertThat(await(refreshStarted)).isTrue();
+
+        refreshAnswered.countDown();
+        // once the first token expired the caller waits for the refresh that is in flight
+        clock.advance(Duration.ofSeconds(1));
+        assertThat(spotifyAuthService.getAccessToken().getToken()).isEqualTo("second token");
+        server.verify();
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * a clock that only moves when the test says so
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
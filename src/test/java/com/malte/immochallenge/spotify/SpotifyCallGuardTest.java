@@ -0,0 +1,198 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.SpotifyCallGuard.CircuitState;
+import com.malte.immochallenge.spotify.exception.SpotifyApiException;
+import com.malte.immochallenge.spotify.exception.SpotifyUnavailableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpotifyCallGuardTest {
+
+    SpotifyConfiguration configuration = new SpotifyConfiguration();
+    SpotifyCallGuard callGuard = new SpotifyCallGuard(configuration);
+    AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        configuration.setCallTimeout(Duration.ofSeconds(5));
+        configuration.setCircuitBreakerFailureThreshold(3);
+        configuration.setCircuitBreakerOpenDuration(Duration.ofMillis(100));
+    }
+
+    @Nested
+    class Timeouts {
+
+        @Test
+        @DisplayName("a call that takes too long should be given up")
+        void execute1() {
+            configuration.setCallTimeout(Duration.ofMillis(100));
+            var started = System.nanoTime();
+
+            assertThatThrownBy(() -> callGuard.execute(() -> sleep(5000)))
+                    .isInstanceOfSatisfying(SpotifyUnavailableException.class,
+                            exception -> assertThat(exception.getStatus()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT));
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+        }
+
+        @Test
+        @DisplayName("calls after the deadline of the run should fail without being made")
+        void startRun1() {
+            configuration.setRunTimeout(Duration.ZERO);
+
+            try (var ignored = callGuard.startRun()) {
+                assertThatThrownBy(() -> callGuard.execute(calls::incrementAndGet)).isInstanceOf(SpotifyUnavailableException.class);
+            }
+            assertThat(calls.get()).isZero();
+            // the deadline only applies to the run
+            assertThat(callGuard.execute(calls::incrementAndGet)).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class CircuitBreaker {
+
+        @Test
+        @DisplayName("the circuit should open after repeated server errors")
+        void execute1() {
+            failTimes(3);
+
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.OPEN);
+            assertThatThrownBy(() -> callGuard.execute(calls::incrementAndGet)).isInstanceOf(SpotifyUnavailableException.class);
+            assertThat(calls.get()).isZero();
+        }
+
+        @Test
+        @DisplayName("a successful probe should close the circuit")
+        void execute2() {
+            failTimes(3);
+            sleep(150);
+
+            assertThat(callGuard.execute(calls::incrementAndGet)).isEqualTo(1);
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+        }
+
+        @Test
+        @DisplayName("a failed probe should open the circuit again")
+        void execute3() {
+            failTimes(3);
+            sleep(150);
+
+            failTimes(1);
+
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.OPEN);
+        }
+
+        @Test
+        @DisplayName("client errors should not open the circuit")
+        void execute4() {
+            for (int i = 0; i < 5; i++) {
+                assertThatThrownBy(() -> callGuard.execute(() -> {
+                    throw new SpotifyApiException(HttpStatus.NOT_FOUND, "not found");
+                })).isInstanceOf(SpotifyApiException.class);
+            }
+
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+        }
+
+        @Test
+        @DisplayName("a probe that is interrupted like the losing attempt of a hedged call should keep the circuit half open")
+        void execute5() throws InterruptedException {
+            failTimes(3);
+            sleep(150);
+            var probeStarted = new CountDownLatch(1);
+            var loser = Thread.ofVirtual().start(() -> callGuard.execute(() -> {
+                probeStarted.countDown();
+                return sleep(5000);
+            }));
+            assertThat(probeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            loser.interrupt();
+            loser.join();
+
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.HALF_OPEN);
+            // the next call probes, the interrupted one did not block it
+            assertThat(callGuard.execute(calls::incrementAndGet)).isEqualTo(1);
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+        }
+
+        @Test
+        @DisplayName("an interrupted call should neither reset nor add to the failures in a row")
+        void execute6() throws InterruptedException {
+            configuration.setCallTimeout(null);
+            failTimes(2);
+            var loser = Thread.ofVirtual().start(() -> {
+                Thread.currentThread().interrupt();
+                callGuard.execute(() -> sleep(5000));
+            });
+            loser.join();
+
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+            failTimes(1);
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.OPEN);
+        }
+
+        private void failTimes(int times) {
+            for (int i = 0; i < times; i++) {
+                assertThatThrownBy(() -> callGuard.execute(() -> {
+                    throw new SpotifyApiException(HttpStatus.BAD_GATEWAY, "bad gateway");
+                })).isInstanceOf(SpotifyApiException.class);
+            }
+        }
+    }
+
+    @Nested
+    class Bulkhead {
+
+        @Test
+        @DisplayName("calls should be rejected while too many calls are stuck")
+        void execute1() throws InterruptedException {
+            configuration.setMaxActiveCalls(1);
+            var release = new CountDownLatch(1);
+            var stuckCall = Thread.ofVirtual().start(() -> callGuard.execute(() -> await(release)));
+            while (callGuard.getActiveCalls() == 0) {
+                sleep(5);
+            }
+
+            assertThatThrownBy(() -> callGuard.execute(calls::incrementAndGet))
+                    .isInstanceOfSatisfying(SpotifyUnavailableException.class,
+                            exception -> assertThat(exception.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+            // the bulkhead does not count as a failure of the api
+            assertThat(callGuard.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+
+            release.countDown();
+            stuckCall.join();
+            assertThat(callGuard.execute(calls::incrementAndGet)).isEqualTo(1);
+            assertThat(callGuard.getActiveCalls()).isZero();
+        }
+    }
+
+    private static Integer sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+        return null;
+    }
+
+    private static Boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+}
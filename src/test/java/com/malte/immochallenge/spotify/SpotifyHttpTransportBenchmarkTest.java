@@ -0,0 +1,143 @@
+package com.malte.immochallenge.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malte.immochallenge.spotify.model.SpotifyAlbum;
+import com.malte.immochallenge.spotify.model.SpotifyExternalUrls;
+import com.malte.immochallenge.spotify.model.SpotifyImage;
+import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * compares the request throughput of the pooled transport with the jdk client the rest client used before.
+ * run with ./gradlew benchmark
+ */
+@Tag("benchmark")
+class SpotifyHttpTransportBenchmarkTest {
+    private static final int WARMUP_REQUESTS = 500;
+    private static final int REQUESTS = 5000;
+    private static final int CONCURRENCY = 8;
+
+    HttpServer stubServer;
+    byte[] albumPage;
+    byte[] gzippedAlbumPage;
+    AtomicLong sentBytes = new AtomicLong();
+    String url;
+
+    @BeforeEach
+    void startStubServer() throws IOException {
+        var albums = IntStream.range(0, 50).mapToObj(i -> SpotifyAlbum.builder()
+                .id("album" + i)
+                .name("name " + i)
+                .available_markets(Arrays.asList(Locale.getISOCountries()))
+                .external_urls(SpotifyExternalUrls.builder().spotify("https://open.spotify.com/album/" + i).build())
+                .images(List.of(SpotifyImage.builder().url("https://i.scdn.co/image/" + i).width(640).height(640).build()))
+                .artists(List.of())
+                .build()).toList();
+        albumPage = new ObjectMapper().writeValueAsBytes(SpotifyAlbumsResponse.builder().items(albums).build());
+        var gzipped = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(albumPage);
+        }
+        gzippedAlbumPage = gzipped.toByteArray();
+
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stubServer.createContext("/v1/albums", this::handle);
+        stubServer.start();
+        url = "http://localhost:" + stubServer.getAddress().getPort() + "/v1/albums";
+    }
+
+    @AfterEach
+    void stopStubServer() {
+        stubServer.stop(0);
+    }
+
+    @Test
+    @DisplayName("the pooled transport should keep up with the default client")
+    void throughput() throws IOException {
+        var configuration = new SpotifyConfiguration();
+        var connectionManager = SpotifyHttpTransport.connectionManager(configuration);
+        try (CloseableHttpClient httpClient = SpotifyHttpTransport.configure(HttpClients.custom(), configuration, connectionManager).build()) {
+            var defaultResult = run("default jdk client", new JdkClientHttpRequestFactory());
+            var pooledResult = run("pooled transport", new HttpComponentsClientHttpRequestFactory(httpClient));
+
+            assertThat(pooledResult.bytesPerRequest()).isLessThan(defaultResult.bytesPerRequest());
+            // the connections were kept open for reuse
+            assertThat(connectionManager.getTotalStats().getAvailable()).isBetween(1, configuration.getMaxConnections());
+        }
+    }
+
+    private Result run(String name, ClientHttpRequestFactory requestFactory) {
+        var restClient = RestClient.builder().requestFactory(requestFactory).build();
+        send(restClient, WARMUP_REQUESTS);
+
+        sentBytes.set(0);
+        var started = System.nanoTime();
+        send(restClient, REQUESTS);
+        var seconds = (System.nanoTime() - started) / 1e9;
+
+        var result = new Result(REQUESTS / seconds, sentBytes.get() / REQUESTS);
+        System.out.printf(Locale.ROOT, "%s: %.0f requests/s, %d bytes on the wire per request%n",
+                name, result.requestsPerSecond(), result.bytesPerRequest());
+        return result;
+    }
+
+    private void send(RestClient restClient, int requests) {
+        List<Future<byte[]>> bodies = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY)) {
+            for (int i = 0; i < requests; i++) {
+                bodies.add(executor.submit(() -> restClient.get().uri(url).retrieve().body(byte[].class)));
+            }
+        }
+        for (Future<byte[]> body : bodies) {
+            assertThat(body).succeedsWithin(Duration.ZERO).satisfies(bytes -> assertThat(bytes).hasSize(albumPage.length));
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        var acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        var gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        var body = gzip ? gzippedAlbumPage : albumPage;
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (gzip) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+        sentBytes.addAndGet(body.length);
+    }
+
+    private record Result(double requestsPerSecond, long bytesPerRequest) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.malte.immochallenge.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
+import com.malte.immochallenge.spotify.model.SpotifyAccessToken;
+import com.malte.immochallenge.spotify.model.SpotifyArtist;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * runs the spotify service against a local stub server that answers with 429
+ */
+class SpotifyRateLimiterTest {
+
+    HttpServer stubServer;
+    AtomicInteger receivedRequests = new AtomicInteger();
+    ConcurrentLinkedQueue<Integer> scriptedStatuses = new ConcurrentLinkedQueue<>();
+
+    SpotifyConfiguration configuration = new SpotifyConfiguration();
+    SpotifyRateLimiter rateLimiter = new SpotifyRateLimiter(configuration);
+    SpotifyService spotifyService;
+
+    @BeforeEach
+    void startStubServer() throws IOException {
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/v1/artists", this::handle);
+        stubServer.start();
+
+        configuration.setApiUrl("http://localhost:" + stubServer.getAddress().getPort() + "/v1");
+        configuration.setMaxConcurrentRequests(8);
+        configuration.setRequestsPerSecond(100);
+        configuration.setRateLimitMaxRetries(2);
+        var spotifyAuthService = mock(SpotifyAuthService.class);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var objectMapper = new ObjectMapper();
+        spotifyService = new SpotifyService(RestClient.create(), spotifyAuthService, configuration, rateLimiter,
+                new SpotifyCallGuard(configuration), new SpotifyRequestHedger(configuration),
+                new SpotifyResponseCache(configuration, objectMapper), objectMapper);
+    }
+
+    @AfterEach
+    void stopStubServer() {
+        stubServer.stop(0);
+    }
+
+    @Test
+    @DisplayName("should retry after a 429 and reduce the concurrency")
+    void execute1() {
+        scriptedStatuses.add(429);
+
+        var artists = spotifyService.getArtistFromApi(List.of("artistId"));
+
+        assertThat(artists).extracting(SpotifyArtist::getId).containsExactly("artistId");
+        assertThat(receivedRequests.get()).isEqualTo(2);
+        assertThat(rateLimiter.getThrottledRequests()).isEqualTo(1);
+        assertThat(rateLimiter.getConcurrencyLimit()).isLessThan(8);
+        assertThat(rateLimiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("should give up when the api keeps answering with 429")
+    void execute2() {
+        scriptedStatuses.addAll(List.of(429, 429, 429, 429));
+
+        assertThatThrownBy(() -> spotifyService.getArtistFromApi(List.of("artistId")))
+                .isInstanceOf(SpotifyRateLimitException.class);
+        assertThat(receivedRequests.get()).isEqualTo(3);
+        assertThat(rateLimiter.getConcurrencyLimit()).isEqualTo(1);
+        assertThat(rateLimiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("should grow the concurrency again with successful requests")
+    void execute3() {
+        scriptedStatuses.add(429);
+        spotifyService.getArtistFromApi(List.of("artistId"));
+        var reducedLimit = rateLimiter.getConcurrencyLimit();
+
+        spotifyService.getArtistFromApi(List.of("artistId"));
+
+        assertThat(rateLimiter.getConcurrencyLimit()).isGreaterThan(reducedLimit);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        receivedRequests.incrementAndGet();
+        var status = scriptedStatuses.poll();
+        if (status != null && status == 429) {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+            return;
+        }
+        var ids = exchange.getRequestURI().getQuery().substring("ids=".length());
+        var body = ("{\"artists\":[{\"id\":\"" + ids + "\",\"name\":\"name\"}]}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.malte.immochallenge.spotify;
+
+import com.malte.immochallenge.spotify.exception.SpotifyApiException;
+import com.malte.immochallenge.spotify.exception.SpotifyRateLimitException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpotifyRequestHedgerTest {
+
+    SpotifyConfiguration configuration = new SpotifyConfiguration();
+    SpotifyRequestHedger hedger;
+    AtomicInteger attempts = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        configuration.setHedgingEnabled(true);
+        configuration.setHedgeMinSamples(10);
+        configuration.setHedgeBudget(1);
+        hedger = new SpotifyRequestHedger(configuration);
+        // the usual latency is a few milliseconds
+        for (int i = 0; i < 10; i++) {
+            hedger.getLatencies().record(Duration.ofMillis(5));
+        }
+    }
+
+    @Test
+    @DisplayName("a slow call should be hedged and the faster answer used")
+    void execute1() {
+        var started = System.nanoTime();
+
+        var result = hedger.execute(slowFirstAttempt(() -> "answer"));
+
+        assertThat(result).isEqualTo("answer");
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(hedger.getHedges()).isEqualTo(1);
+        assertThat(hedger.getHedgesWon()).isEqualTo(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    @DisplayName("nothing should be hedged once the budget is used up")
+    void execute2() {
+        configuration.setHedgeBudget(0);
+
+        var result = hedger.execute(() -> {
+            attempts.incrementAndGet();
+            sleep(100);
+            return "answer";
+        });
+
+        assertThat(result).isEqualTo("answer");
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(hedger.getHedges()).isZero();
+    }
+
+    @Test
+    @DisplayName("nothing should be hedged before enough latencies were observed")
+    void execute3() {
+        configuration.setHedgeMinSamples(1000);
+
+        hedger.execute(() -> attempts.incrementAndGet());
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(hedger.getHedges()).isZero();
+    }
+
+    @Test
+    @DisplayName("a failed attempt should not be the result while the other one can still answer")
+    void execute4() {
+        var result = hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(100);
+                throw new SpotifyApiException(HttpStatus.BAD_GATEWAY, "bad gateway");
+            }
+            sleep(200);
+            return "answer";
+        });
+
+        assertThat(result).isEqualTo("answer");
+    }
+
+    @Test
+    @DisplayName("the failure should be thrown once all attempts failed")
+    void execute5() {
+        assertThatThrownBy(() -> hedger.execute(() -> {
+            attempts.incrementAndGet();
+            sleep(50);
+            throw new SpotifyApiException(HttpStatus.BAD_GATEWAY, "bad gateway");
+        })).isInstanceOf(SpotifyApiException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("a 429 of the primary attempt should be the result even though the hedge would succeed")
+    void execute6() {
+        assertThatThrownBy(() -> hedger.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(100);
+                throw new SpotifyRateLimitException(Duration.ofSeconds(1));
+            }
+            // would answer later, the 429 must not wait for it
+            sleep(1000);
+            return "answer";
+        })).isInstanceOf(SpotifyRateLimitException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("every attempt should take its own permit and report its 429 to the rate limiter")
+    void execute7() {
+        configuration.setRequestsPerSecond(0);
+        configuration.setMaxConcurrentRequests(8);
+        configuration.setRateLimitMaxRetries(0);
+        var rateLimiter = new SpotifyRateLimiter(configuration);
+        var hedgeSent = new CountDownLatch(1);
+        var inFlight = new AtomicInteger();
+
+        assertThatThrownBy(() -> rateLimiter.retrying(() -> hedger.execute(() -> rateLimiter.attempt(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(hedgeSent);
+                throw new SpotifyRateLimitException(Duration.ZERO);
+            }
+            inFlight.set(rateLimiter.getInFlight());
+            hedgeSent.countDown();
+            sleep(1000);
+            return "answer";
+        })))).isInstanceOf(SpotifyRateLimitException.class);
+
+        // both attempts held a permit at the same time
+        assertThat(inFlight.get()).isEqualTo(2);
+        assertThat(rateLimiter.getThrottledRequests()).isEqualTo(1);
+        assertThat(rateLimiter.getConcurrencyLimit()).isLessThan(8);
+    }
+
+    private <T> Supplier<T> slowFirstAttempt(Supplier<T> call) {
+        return () -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(5000);
+            }
+            return call.get();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.malte.immochallenge.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpotifyResponseCacheTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    SpotifyConfiguration configuration = new SpotifyConfiguration();
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        configuration.setResponseCacheDirectory(cacheDirectory.toString());
+        configuration.setResponseCacheMaxEntries(2);
+    }
+
+    @Test
+    @DisplayName("entries should survive a restart after a flush")
+    void flush() {
+        var cache = new SpotifyResponseCache(configuration, objectMapper);
+        var entry = new SpotifyResponseCache.Entry("\"etag\"", "Wed, 21 Oct 2015 07:28:00 GMT", "hash", "next");
+        cache.put("url", entry);
+        cache.flush();
+
+        var restartedCache = new SpotifyResponseCache(configuration, objectMapper);
+
+        assertThat(restartedCache.get("url")).isEqualTo(entry);
+    }
+
+    @Test
+    @DisplayName("the least recently used entry should be dropped when the cache is full")
+    void put() {
+        var cache = new SpotifyResponseCache(configuration, objectMapper);
+        cache.put("first", new SpotifyResponseCache.Entry(null, null, "1", null));
+        cache.put("second", new SpotifyResponseCache.Entry(null, null, "2", null));
+        cache.get("first");
+
+        cache.put("third", new SpotifyResponseCache.Entry(null, null, "3", null));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("second")).isNull();
+        assertThat(cache.get("first")).isNotNull();
+        assertThat(cache.get("third")).isNotNull();
+    }
+
+    @Test
+    @DisplayName("an entry older than the max age should not be returned, so its page is handed over again")
+    void get() {
+        configuration.setResponseCacheMaxAge(Duration.ofDays(7));
+        var start = Instant.parse("2025-10-10T10:00:00Z");
+        var cache = new SpotifyResponseCache(configuration, objectMapper);
+        cache.setClock(Clock.fixed(start, ZoneOffset.UTC));
+        cache.put("url", new SpotifyResponseCache.Entry(null, null, "hash", null));
+
+        cache.setClock(Clock.fixed(start.plus(Duration.ofDays(7)), ZoneOffset.UTC));
+        assertThat(cache.get("url")).isNotNull();
+
+        cache.setClock(Clock.fixed(start.plus(Duration.ofDays(8)), ZoneOffset.UTC));
+        assertThat(cache.get("url")).isNull();
+    }
+
+    @Test
+    @DisplayName("a revalidated entry should keep the age of the page that was handed over")
+    void revalidate() {
+        configuration.setResponseCacheMaxAge(Duration.ofDays(7));
+        var start = Instant.parse("2025-10-10T10:00:00Z");
+        var cache = new SpotifyResponseCache(configuration, objectMapper);
+        cache.setClock(Clock.fixed(start, ZoneOffset.UTC));
+        cache.put("url", new SpotifyResponseCache.Entry("\"1\"", null, "hash", null));
+
+        cache.setClock(Clock.fixed(start.plus(Duration.ofDays(6)), ZoneOffset.UTC));
+        var revalidatedEntry = new SpotifyResponseCache.Entry("\"2\"", null, "hash", null);
+        cache.revalidate("url", revalidatedEntry);
+        assertThat(cache.get("url")).isEqualTo(revalidatedEntry);
+
+        cache.setClock(Clock.fixed(start.plus(Duration.ofDays(8)), ZoneOffset.UTC));
+        assertThat(cache.get("url")).isNull();
+    }
+
+    @Test
+    @DisplayName("the cache should be disabled without a directory")
+    void isEnabled() {
+        configuration.setResponseCacheDirectory(null);
+        var cache = new SpotifyResponseCache(configuration, objectMapper);
+
+        cache.put("url", new SpotifyResponseCache.Entry(null, null, "hash", null));
+
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get("url")).isNull();
+    }
+}
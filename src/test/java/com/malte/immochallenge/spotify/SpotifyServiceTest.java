@@ -7,26 +7,40 @@ import com.malte.immochallenge.spotify.model.*;
 import com.malte.immochallenge.spotify.response.SpotifyAlbumsResponse;
 import com.malte.immochallenge.spotify.response.SpotifyApiErrorResponse;
 import com.malte.immochallenge.spotify.response.SpotifyArtistsResponse;
+import com.malte.immochallenge.spotify.response.SpotifyPage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.headerDoesNotExist;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
-@RestClientTest(SpotifyService.class)
+@RestClientTest({SpotifyService.class, SpotifyRateLimiter.class, SpotifyCallGuard.class, SpotifyRequestHedger.class,
+        SpotifyResponseCache.class})
 class SpotifyServiceTest {
 
     @Autowired
@@ -45,12 +59,14 @@ class SpotifyServiceTest {
     SpotifyService spotifyService;
 
     String artistUrl = "https://api.spotify.com/v1/artists?ids=test";
-    String albumUrl = "https://api.spotify.com/v1/artists/test/albums";
+    String albumUrl = "https://api.spotify.com/v1/artists/test/albums?limit=50&offset=0";
 
     @BeforeEach
     void resetMockServer() {
         server.reset();
+        when(configuration.getApiUrl()).thenReturn("https://api.spotify.com/v1");
         when(configuration.getArtistIds()).thenReturn(List.of("test"));
+        when(configuration.getAlbumPageSize()).thenReturn(50);
     }
 
     @Test
@@ -104,6 +120,33 @@ class SpotifyServiceTest {
         server.verify();
     }
 
+    @Test
+    @DisplayName("should split the artist ids into chunks of 50")
+    void getArtistFromApi3() {
+        var artistIds = IntStream.range(0, 120).mapToObj(i -> "id" + i).toList();
+        when(configuration.getArtistIds()).thenReturn(artistIds);
+        when(configuration.getMaxConcurrentRequests()).thenReturn(3);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        server.expect(ExpectedCount.times(3), requestTo(startsWith("https://api.spotify.com/v1/artists?ids=")))
+                .andRespond(request -> {
+                    var ids = URLDecoder.decode(request.getURI().getRawQuery().substring("ids=".length()), StandardCharsets.UTF_8).split(",");
+                    assertThat(ids.length).isLessThanOrEqualTo(50);
+                    var artists = Arrays.stream(ids).map(id -> {
+                        var artist = getSpotifyArtist();
+                        artist.setId(id);
+                        return artist;
+                    }).toList();
+                    var body = mapper.writeValueAsString(SpotifyArtistsResponse.builder().artists(artists).build());
+                    return withSuccess(body, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        var artistResponse = spotifyService.getArtistFromApi();
+
+        assertThat(artistResponse).extracting(SpotifyArtist::getId).containsExactlyElementsOf(artistIds);
+        verify(spotifyAuthService, times(3)).getAccessToken();
+        server.verify();
+    }
+
     @Test
     @DisplayName("should get all albums for one artists from the api")
     void getAlbumsFromApi1() throws JsonProcessingException {
@@ -121,7 +164,7 @@ class SpotifyServiceTest {
     }
 
     @Test
-    @DisplayName("should handle errors correctly")
+    @DisplayName("should skip artists whose albums can not be fetched")
     void getAlbumsFromApi2() throws JsonProcessingException {
         when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
         SpotifyApiErrorResponse error = SpotifyApiErrorResponse.builder().error(SpotifyApiErrorResponse.ErrorBody.builder().status(500).message("error message").build()).build();
@@ -129,9 +172,208 @@ class SpotifyServiceTest {
         server.expect(requestTo(albumUrl))
                 .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR).body(mapper.writeValueAsString(error)));
 
-        assertThatThrownBy(() -> spotifyService.getAlbumsFromApi()).isInstanceOf(SpotifyApiException.class)
-                .hasMessageContaining("500 INTERNAL_SERVER_ERROR: error message");
+        var albumsResponse = spotifyService.getAlbumsFromApi();
+
+        assertThat(albumsResponse).isEmpty();
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should keep the order of the configured artists")
+    void getAlbumsFromApi3() {
+        when(configuration.getArtistIds()).thenReturn(List.of("first", "second", "third"));
+        when(configuration.getMaxConcurrentRequests()).thenReturn(3);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        server.expect(ExpectedCount.times(3), requestTo(startsWith("https://api.spotify.com/v1/artists/")))
+                .andRespond(request -> {
+                    var album = getSpotifyAlbum();
+                    album.setId(request.getURI().getPath().split("/")[3]);
+                    var body = mapper.writeValueAsString(SpotifyAlbumsResponse.builder().items(List.of(album)).build());
+                    return withSuccess(body, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        var albumsResponse = spotifyService.getAlbumsFromApi();
+
+        assertThat(albumsResponse).extracting(SpotifyAlbum::getId).containsExactly("first", "second", "third");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should follow the pagination of the albums endpoint")
+    void getAlbumsFromApi4() throws JsonProcessingException {
+        when(configuration.getAlbumIncludeGroups()).thenReturn("album");
+        when(configuration.getAlbumPageSize()).thenReturn(1);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var firstPageUrl = "https://api.spotify.com/v1/artists/test/albums?include_groups=album&limit=1&offset=0";
+        var secondPageUrl = "https://api.spotify.com/v1/artists/test/albums?include_groups=album&limit=1&offset=1";
+        server.expect(requestTo(firstPageUrl))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .limit(1)
+                        .offset(0)
+                        .total(2)
+                        .next(secondPageUrl)
+                        .build()), MediaType.APPLICATION_JSON));
+        server.expect(requestTo(secondPageUrl))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .limit(1)
+                        .offset(1)
+                        .total(2)
+                        .next(null)
+                        .build()), MediaType.APPLICATION_JSON));
+
+        var albumsResponse = spotifyService.getAlbumsFromApi();
+
+        assertThat(albumsResponse).hasSize(2);
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should hand every page to the consumer as soon as it arrives")
+    void streamAlbumsFromApi1() throws JsonProcessingException {
+        when(configuration.getAlbumPageSize()).thenReturn(1);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var firstPageUrl = "https://api.spotify.com/v1/artists/test/albums?limit=1&offset=0";
+        var secondPageUrl = "https://api.spotify.com/v1/artists/test/albums?limit=1&offset=1";
+        server.expect(requestTo(firstPageUrl))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .next(secondPageUrl)
+                        .build()), MediaType.APPLICATION_JSON));
+        server.expect(requestTo(secondPageUrl))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .build()), MediaType.APPLICATION_JSON));
+
+        List<String> pages = new ArrayList<>();
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+
+        assertThat(pages).containsExactly("test:1", "test:1");
+        server.verify();
+    }
 
+    @Test
+    @DisplayName("should send the etag of the last response and skip pages that were not modified")
+    void streamAlbumsFromApi2(@TempDir Path cacheDirectory) throws JsonProcessingException {
+        when(configuration.getResponseCacheDirectory()).thenReturn(cacheDirectory.toString());
+        when(configuration.getResponseCacheMaxEntries()).thenReturn(100);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var etagHeaders = new HttpHeaders();
+        etagHeaders.setETag("\"v1\"");
+        server.expect(requestTo(albumUrl))
+                .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .build()), MediaType.APPLICATION_JSON).headers(etagHeaders));
+        server.expect(requestTo(albumUrl))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        List<String> pages = new ArrayList<>();
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+
+        assertThat(pages).containsExactly("test:1");
+        assertThat(cacheDirectory.resolve("responses.json")).exists();
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should skip pages with the same body when the api ignores the validators")
+    void streamAlbumsFromApi3(@TempDir Path cacheDirectory) throws JsonProcessingException {
+        when(configuration.getResponseCacheDirectory()).thenReturn(cacheDirectory.toString());
+        when(configuration.getResponseCacheMaxEntries()).thenReturn(100);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var body = mapper.writeValueAsString(SpotifyAlbumsResponse.builder().items(List.of(getSpotifyAlbum())).build());
+        server.expect(ExpectedCount.times(2), requestTo(albumUrl))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+
+        List<String> pages = new ArrayList<>();
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+
+        assertThat(pages).containsExactly("test:1");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should not remember a page when the consumer failed")
+    void streamAlbumsFromApi4(@TempDir Path cacheDirectory) throws JsonProcessingException {
+        when(configuration.getResponseCacheDirectory()).thenReturn(cacheDirectory.toString());
+        when(configuration.getResponseCacheMaxEntries()).thenReturn(100);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var body = mapper.writeValueAsString(SpotifyAlbumsResponse.builder().items(List.of(getSpotifyAlbum())).build());
+        server.expect(ExpectedCount.times(2), requestTo(albumUrl))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+
+        assertThatThrownBy(() -> spotifyService.streamAlbumsFromApi((artistId, albums) -> {
+            throw new IllegalStateException("persisting failed");
+        })).isInstanceOf(IllegalStateException.class);
+        List<String> pages = new ArrayList<>();
+        spotifyService.streamAlbumsFromApi((artistId, albums) -> pages.add(artistId + ":" + albums.size()));
+
+        assertThat(pages).containsExactly("test:1");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("should fetch a page again when the consumer never reported it as persisted")
+    void streamAlbumsFromApi5(@TempDir Path cacheDirectory) throws JsonProcessingException {
+        when(configuration.getResponseCacheDirectory()).thenReturn(cacheDirectory.toString());
+        when(configuration.getResponseCacheMaxEntries()).thenReturn(100);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        var body = mapper.writeValueAsString(SpotifyAlbumsResponse.builder().items(List.of(getSpotifyAlbum())).build());
+        server.expect(ExpectedCount.times(3), requestTo(albumUrl))
+                .andRespond(withSuccess(body, MediaType.APPLICATION_JSON));
+        List<String> pages = new ArrayList<>();
+        List<Runnable> persisted = new ArrayList<>();
+        var persistingConsumer = new AlbumPageConsumer<SpotifyAlbum>() {
+            @Override
+            public void accept(String artistId, List<SpotifyAlbum> albums) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void accept(String artistId, List<SpotifyAlbum> albums, Runnable handled) {
+                // persisted later, like the persist stage of the synchronization
+                pages.add(artistId + ":" + albums.size());
+                persisted.add(handled);
+            }
+        };
+
+        // persisting fails after the page was handed over
+        spotifyService.streamAlbumsFromApi(persistingConsumer);
+        persisted.clear();
+        spotifyService.streamAlbumsFromApi(persistingConsumer);
+        persisted.forEach(Runnable::run);
+        spotifyService.streamAlbumsFromApi(persistingConsumer);
+
+        assertThat(pages).containsExactly("test:1", "test:1");
+        server.verify();
+    }
+
+    @Test
+    @DisplayName("pages decoded by a reader should only be written to disk when the caller flushes the cache")
+    void streamAlbumsFromApi6(@TempDir Path cacheDirectory) throws JsonProcessingException {
+        when(configuration.getResponseCacheDirectory()).thenReturn(cacheDirectory.toString());
+        when(configuration.getResponseCacheMaxEntries()).thenReturn(100);
+        when(spotifyAuthService.getAccessToken()).thenReturn(SpotifyAccessToken.builder().token("").build());
+        server.expect(requestTo(albumUrl))
+                .andRespond(withSuccess(mapper.writeValueAsString(SpotifyAlbumsResponse.builder()
+                        .items(List.of(getSpotifyAlbum()))
+                        .build()), MediaType.APPLICATION_JSON));
+        SpotifyPageReader<SpotifyAlbum> reader = body -> {
+            var response = mapper.readValue(body, SpotifyAlbumsResponse.class);
+            return new SpotifyPage<>(response.getItems(), response.getNext());
+        };
+
+        spotifyService.streamAlbumsFromApi(List.of("test"), reader, (artistId, albums) -> {
+        });
+
+        assertThat(cacheDirectory.resolve("responses.json")).doesNotExist();
+        spotifyService.flushResponseCache();
+        assertThat(cacheDirectory.resolve("responses.json")).exists();
         server.verify();
     }
 
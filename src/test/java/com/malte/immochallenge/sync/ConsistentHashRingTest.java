@@ -0,0 +1,52 @@
+package com.malte.immochallenge.sync;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    List<String> artistIds = IntStream.range(0, 3000).mapToObj(i -> "artist" + i).toList();
+
+    @Test
+    @DisplayName("every artist should be owned by exactly one node and the nodes should get similar shares")
+    void nodeFor1() {
+        var ring = new ConsistentHashRing(List.of("a", "b", "c"), 100);
+
+        var artistsPerNode = artistIds.stream().collect(Collectors.groupingBy(ring::nodeFor, Collectors.counting()));
+
+        assertThat(artistsPerNode).containsOnlyKeys("a", "b", "c");
+        assertThat(artistsPerNode.values()).allSatisfy(count -> assertThat(count).isBetween(700L, 1300L));
+    }
+
+    @Test
+    @DisplayName("only the artists of a leaving node should move")
+    void nodeFor2() {
+        var before = new ConsistentHashRing(List.of("a", "b", "c"), 100);
+        var after = new ConsistentHashRing(List.of("a", "b"), 100);
+
+        assertThat(artistIds)
+                .filteredOn(artistId -> !before.nodeFor(artistId).equals("c"))
+                .allSatisfy(artistId -> assertThat(after.nodeFor(artistId)).isEqualTo(before.nodeFor(artistId)));
+    }
+
+    @Test
+    @DisplayName("the assignment should not depend on the order of the nodes")
+    void nodeFor3() {
+        var ring = new ConsistentHashRing(List.of("a", "b", "c"), 100);
+        var reversedRing = new ConsistentHashRing(List.of("c", "b", "a"), 100);
+
+        assertThat(artistIds).allSatisfy(artistId -> assertThat(reversedRing.nodeFor(artistId)).isEqualTo(ring.nodeFor(artistId)));
+    }
+
+    @Test
+    @DisplayName("an empty ring should not own any artist")
+    void nodeFor4() {
+        assertThat(new ConsistentHashRing(List.of(), 100).nodeFor("artist")).isNull();
+    }
+}
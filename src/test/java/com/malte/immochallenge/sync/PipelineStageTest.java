@@ -0,0 +1,82 @@
+package com.malte.immochallenge.sync;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelineStageTest {
+
+    @Test
+    @DisplayName("all submitted items should be processed before close returns")
+    void close1() {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        try (var stage = new PipelineStage<Integer>("test", 4, 2, processed::add)) {
+            IntStream.range(0, 100).forEach(stage::submit);
+        }
+        assertThat(processed).containsExactlyInAnyOrderElementsOf(IntStream.range(0, 100).boxed().toList());
+    }
+
+    @Test
+    @DisplayName("a single worker should process the items in order")
+    void close2() {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        try (var stage = new PipelineStage<Integer>("test", 1, 1, processed::add)) {
+            IntStream.range(0, 20).forEach(stage::submit);
+        }
+        assertThat(processed).isEqualTo(IntStream.range(0, 20).boxed().toList());
+    }
+
+    @Test
+    @DisplayName("submit should block while the queue is full")
+    void submit1() throws InterruptedException {
+        var release = new CountDownLatch(1);
+        var processed = new AtomicInteger();
+        var submitted = new AtomicInteger();
+        try (var stage = new PipelineStage<Integer>("test", 1, 2, item -> {
+            await(release);
+            processed.incrementAndGet();
+        })) {
+            var producer = Thread.ofVirtual().start(() -> IntStream.range(0, 10).forEach(item -> {
+                stage.submit(item);
+                submitted.incrementAndGet();
+            }));
+            Thread.sleep(200);
+            // one item is held by the worker and two are queued
+            assertThat(submitted.get()).isEqualTo(3);
+            release.countDown();
+            producer.join();
+        }
+        assertThat(processed.get()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("the failure of a worker should be thrown to the producer")
+    void submit2() {
+        var stage = new PipelineStage<Integer>("test", 2, 1, item -> {
+            throw new IllegalArgumentException("broken " + item);
+        });
+        assertThatThrownBy(() -> {
+            try (stage) {
+                IntStream.range(0, 100).forEach(stage::submit);
+            }
+        }).isInstanceOf(IllegalArgumentException.class)
+                .hasNoSuppressedExceptions();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
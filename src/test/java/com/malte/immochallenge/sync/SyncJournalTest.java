@@ -0,0 +1,104 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncRun;
+import com.malte.immochallenge.sync.model.SyncRunStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SyncJournalTest {
+
+    @Mock
+    SyncRunRepository syncRunRepository;
+    @Mock
+    SyncMembership syncMembership;
+    @InjectMocks
+    SyncJournal syncJournal;
+
+    @Captor
+    ArgumentCaptor<List<SyncRun>> runsCaptor;
+
+    LocalDateTime now = LocalDateTime.of(2025, 10, 10, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        when(syncMembership.getNodeId()).thenReturn("node");
+        when(syncMembership.otherLiveNodeIds()).thenReturn(Set.of("live"));
+        when(syncRunRepository.save(any(SyncRun.class))).thenAnswer(invocation -> {
+            SyncRun run = invocation.getArgument(0);
+            return run.getId() == null ? run.toBuilder().id(10L).build() : run;
+        });
+    }
+
+    @Test
+    @DisplayName("a new run should be journaled as running")
+    void start1() {
+        when(syncRunRepository.findByStatus(SyncRunStatus.RUNNING)).thenReturn(List.of());
+
+        var run = syncJournal.start(List.of("a", "b"), now).snapshot();
+
+        assertThat(run.getId()).isEqualTo(10L);
+        assertThat(run.getStatus()).isEqualTo(SyncRunStatus.RUNNING);
+        assertThat(run.getPlannedArtists()).isEqualTo(2);
+        assertThat(run.getResumedRunId()).isNull();
+        verify(syncRunRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("runs that are still running should be marked as interrupted and resumed")
+    void start2() {
+        when(syncRunRepository.findByStatus(SyncRunStatus.RUNNING)).thenReturn(List.of(
+                SyncRun.builder().id(3L).nodeId("node").status(SyncRunStatus.RUNNING).build(),
+                SyncRun.builder().id(7L).nodeId("node").status(SyncRunStatus.RUNNING).build()));
+
+        var run = syncJournal.start(List.of("a"), now).snapshot();
+
+        verify(syncRunRepository).saveAll(runsCaptor.capture());
+        assertThat(runsCaptor.getValue()).extracting(SyncRun::getStatus).containsOnly(SyncRunStatus.INTERRUPTED);
+        assertThat(run.getResumedRunId()).isEqualTo(7L);
+    }
+
+    @Test
+    @DisplayName("runs left behind by an earlier process should be interrupted, runs of live nodes should be kept")
+    void start3() {
+        var leftBehind = SyncRun.builder().id(4L).nodeId("process before the restart").status(SyncRunStatus.RUNNING).build();
+        var running = SyncRun.builder().id(5L).nodeId("live").status(SyncRunStatus.RUNNING).build();
+        when(syncRunRepository.findByStatus(SyncRunStatus.RUNNING)).thenReturn(List.of(leftBehind, running));
+
+        var run = syncJournal.start(List.of("a"), now).snapshot();
+
+        verify(syncRunRepository).saveAll(runsCaptor.capture());
+        assertThat(runsCaptor.getValue()).extracting(SyncRun::getId).containsExactly(4L);
+        assertThat(leftBehind.getStatus()).isEqualTo(SyncRunStatus.INTERRUPTED);
+        assertThat(running.getStatus()).isEqualTo(SyncRunStatus.RUNNING);
+        assertThat(run.getResumedRunId()).isEqualTo(4L);
+    }
+
+    @Test
+    @DisplayName("a failed run should keep the error message")
+    void fail() {
+        when(syncRunRepository.findByStatus(SyncRunStatus.RUNNING)).thenReturn(List.of());
+        var recorder = syncJournal.start(List.of("a"), now);
+
+        var run = syncJournal.fail(recorder, new IllegalStateException("broken"));
+
+        assertThat(run.getStatus()).isEqualTo(SyncRunStatus.FAILED);
+        assertThat(run.getErrorMessage()).isEqualTo("broken");
+        assertThat(run.getFinished()).isNotNull();
+    }
+}
@@ -0,0 +1,121 @@
+package com.malte.immochallenge.sync;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SyncLockTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    Connection connection;
+    @Mock
+    PreparedStatement lockStatement;
+    @Mock
+    PreparedStatement unlockStatement;
+    @Mock
+    ResultSet lockResult;
+
+    SyncConfiguration syncConfiguration = new SyncConfiguration();
+
+    SyncLock syncLock;
+
+    AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        syncLock = new SyncLock(jdbcTemplate, syncConfiguration);
+        lenient().when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+                invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        lenient().when(connection.prepareStatement("SELECT pg_try_advisory_lock(?)")).thenReturn(lockStatement);
+        lenient().when(lockStatement.executeQuery()).thenReturn(lockResult);
+        lenient().when(lockResult.next()).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("the task should run and the lock should be released when the lock was acquired")
+    void runExclusively1() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(connection.prepareStatement("SELECT pg_advisory_unlock(?)")).thenReturn(unlockStatement);
+
+        var ran = syncLock.runExclusively(runs::incrementAndGet);
+
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+        verify(lockStatement).setLong(1, syncConfiguration.getLockKey());
+        verify(unlockStatement).setLong(1, syncConfiguration.getLockKey());
+        verify(unlockStatement).execute();
+    }
+
+    @Test
+    @DisplayName("the task should be skipped when another node holds the lock")
+    void runExclusively2() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(false);
+
+        var ran = syncLock.runExclusively(runs::incrementAndGet);
+
+        assertThat(ran).isFalse();
+        assertThat(runs.get()).isZero();
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_unlock(?)");
+    }
+
+    @Test
+    @DisplayName("an overlapping run on the same node should be skipped without asking the database")
+    void runExclusively3() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(connection.prepareStatement("SELECT pg_advisory_unlock(?)")).thenReturn(unlockStatement);
+
+        var ran = syncLock.runExclusively(() -> {
+            runs.incrementAndGet();
+            assertThat(syncLock.runExclusively(runs::incrementAndGet)).isFalse();
+        });
+
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+        verify(jdbcTemplate, times(1)).execute(any(ConnectionCallback.class));
+    }
+
+    @Test
+    @DisplayName("the lock should be released when the task fails")
+    void runExclusively4() throws SQLException {
+        when(lockResult.getBoolean(1)).thenReturn(true);
+        when(connection.prepareStatement("SELECT pg_advisory_unlock(?)")).thenReturn(unlockStatement);
+
+        assertThatThrownBy(() -> syncLock.runExclusively(() -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(unlockStatement).execute();
+        assertThat(syncLock.runExclusively(runs::incrementAndGet)).isTrue();
+    }
+
+    @Test
+    @DisplayName("with sharding the task should run without the cluster wide lock")
+    void runExclusively5() {
+        syncConfiguration.setShardingEnabled(true);
+
+        var ran = syncLock.runExclusively(runs::incrementAndGet);
+
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
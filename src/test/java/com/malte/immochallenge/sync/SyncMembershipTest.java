@@ -0,0 +1,112 @@
+package com.malte.immochallenge.sync;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SyncMembershipTest {
+
+    @Mock
+    SyncNodeRepository syncNodeRepository;
+
+    SyncConfiguration syncConfiguration = new SyncConfiguration();
+
+    List<String> artistIds = IntStream.range(0, 300).mapToObj(i -> "artist" + i).toList();
+
+    @BeforeEach
+    void setUp() {
+        syncConfiguration.setShardingEnabled(true);
+    }
+
+    @Test
+    @DisplayName("all artists should be owned when sharding is disabled")
+    void ownedArtistIds1() {
+        syncConfiguration.setShardingEnabled(false);
+        var syncMembership = new SyncMembership(syncConfiguration, syncNodeRepository);
+
+        assertThat(syncMembership.ownedArtistIds(artistIds)).isEqualTo(artistIds);
+        verifyNoInteractions(syncNodeRepository);
+    }
+
+    @Test
+    @DisplayName("the live nodes should split the artists without overlap")
+    void ownedArtistIds2() {
+        when(syncNodeRepository.findAliveNodeIds(30_000)).thenReturn(List.of("a", "b", "c"));
+        List<String> allOwnedArtistIds = new ArrayList<>();
+        for (String nodeId : List.of("a", "b", "c")) {
+            syncConfiguration.setNodeId(nodeId);
+            var ownedArtistIds = new SyncMembership(syncConfiguration, syncNodeRepository).ownedArtistIds(artistIds);
+            assertThat(ownedArtistIds).isNotEmpty();
+            allOwnedArtistIds.addAll(ownedArtistIds);
+        }
+
+        assertThat(allOwnedArtistIds).containsExactlyInAnyOrderElementsOf(artistIds);
+    }
+
+    @Test
+    @DisplayName("a node without a live heartbeat should still own its slice")
+    void ownedArtistIds3() {
+        syncConfiguration.setNodeId("alone");
+        when(syncNodeRepository.findAliveNodeIds(anyLong())).thenReturn(List.of());
+
+        assertThat(new SyncMembership(syncConfiguration, syncNodeRepository).ownedArtistIds(artistIds)).isEqualTo(artistIds);
+    }
+
+    @Test
+    @DisplayName("without a configured id the node should be identified by its host and process")
+    void nodeId1() {
+        var nodeId = new SyncMembership(syncConfiguration, syncNodeRepository).getNodeId();
+
+        assertThat(nodeId).endsWith("-" + ProcessHandle.current().pid());
+        assertThat(new SyncMembership(syncConfiguration, syncNodeRepository).getNodeId()).isEqualTo(nodeId);
+    }
+
+    @Test
+    @DisplayName("a configured id should be used as it is")
+    void nodeId2() {
+        syncConfiguration.setNodeId("replica-1");
+
+        assertThat(new SyncMembership(syncConfiguration, syncNodeRepository).getNodeId()).isEqualTo("replica-1");
+    }
+
+    @Test
+    @DisplayName("the other live nodes should not contain this node")
+    void otherLiveNodeIds1() {
+        syncConfiguration.setNodeId("a");
+        when(syncNodeRepository.findAliveNodeIds(30_000)).thenReturn(List.of("a", "b"));
+
+        assertThat(new SyncMembership(syncConfiguration, syncNodeRepository).otherLiveNodeIds()).containsExactly("b");
+    }
+
+    @Test
+    @DisplayName("without sharding no other node can be synchronizing")
+    void otherLiveNodeIds2() {
+        syncConfiguration.setShardingEnabled(false);
+
+        assertThat(new SyncMembership(syncConfiguration, syncNodeRepository).otherLiveNodeIds()).isEmpty();
+        verifyNoInteractions(syncNodeRepository);
+    }
+
+    @Test
+    @DisplayName("the heartbeat should register the node and remove dead ones")
+    void heartbeat() {
+        syncConfiguration.setNodeId("node");
+
+        new SyncMembership(syncConfiguration, syncNodeRepository).heartbeat();
+
+        verify(syncNodeRepository).heartbeat("node");
+        verify(syncNodeRepository).deleteDeadNodes(30_000);
+    }
+}
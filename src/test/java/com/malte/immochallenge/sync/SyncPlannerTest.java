@@ -0,0 +1,201 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.artist.model.Artist;
+import com.malte.immochallenge.spotify.SpotifyConfiguration;
+import com.malte.immochallenge.sync.model.ArtistSyncSchedule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SyncPlannerTest {
+
+    @Mock
+    ArtistSyncScheduleRepository artistSyncScheduleRepository;
+    @Mock
+    SyncMembership syncMembership;
+
+    @Captor
+    ArgumentCaptor<List<ArtistSyncSchedule>> schedulesCaptor;
+
+    SpotifyConfiguration spotifyConfiguration = new SpotifyConfiguration();
+    SyncConfiguration syncConfiguration = new SyncConfiguration();
+
+    SyncPlanner syncPlanner;
+
+    LocalDateTime now = LocalDateTime.of(2025, 10, 10, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        syncConfiguration.setDefaultTtl(Duration.ofHours(6));
+        syncConfiguration.setMaxTtl(Duration.ofDays(1));
+        syncConfiguration.setRefreshTiers(List.of(
+                new SyncConfiguration.RefreshTier(40, Duration.ofMinutes(30)),
+                new SyncConfiguration.RefreshTier(70, Duration.ofMinutes(5))));
+        syncPlanner = new SyncPlanner(spotifyConfiguration, syncConfiguration, artistSyncScheduleRepository, syncMembership);
+        lenient().when(syncMembership.ownedArtistIds(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Nested
+    public class GetArtistIdsDueForSync {
+
+        @Test
+        @DisplayName("artists that were never synchronized should be due")
+        public void getArtistIdsDueForSync1() {
+            spotifyConfiguration.setArtistIds(List.of("new"));
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            assertThat(syncPlanner.getArtistIdsDueForSync(now)).containsExactly("new");
+        }
+
+        @Test
+        @DisplayName("only artists whose next synchronization is due should be returned")
+        public void getArtistIdsDueForSync2() {
+            spotifyConfiguration.setArtistIds(List.of("due", "fresh", "new"));
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of(
+                    schedule("due", now.minusMinutes(1)),
+                    schedule("fresh", now.plusMinutes(1))));
+
+            assertThat(syncPlanner.getArtistIdsDueForSync(now)).containsExactly("new", "due");
+        }
+
+        @Test
+        @DisplayName("at most one batch of artists should be due, the longest overdue first")
+        public void getArtistIdsDueForSync3() {
+            syncConfiguration.setBatchSize(2);
+            spotifyConfiguration.setArtistIds(List.of("a", "b", "c"));
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of(
+                    schedule("a", now.minusMinutes(1)),
+                    schedule("b", now.minusMinutes(20)),
+                    schedule("c", now.minusMinutes(10))));
+
+            assertThat(syncPlanner.getArtistIdsDueForSync(now)).containsExactly("b", "c");
+        }
+
+        @Test
+        @DisplayName("only the artists of this replica should be due")
+        public void getArtistIdsDueForSync4() {
+            spotifyConfiguration.setArtistIds(List.of("mine", "other"));
+            when(syncMembership.ownedArtistIds(List.of("mine", "other"))).thenReturn(List.of("mine"));
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(new String[]{"mine"})).thenReturn(List.of());
+
+            assertThat(syncPlanner.getArtistIdsDueForSync(now)).containsExactly("mine");
+        }
+    }
+
+    @Nested
+    public class RecordSynchronization {
+
+        @Test
+        @DisplayName("a new artist should start with the ttl of its popularity tier")
+        public void recordSynchronization1() {
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            syncPlanner.recordSynchronization(List.of("hot"), List.of(artist("hot", 90)), Set.of("hot"), now);
+
+            verify(artistSyncScheduleRepository).saveAll(schedulesCaptor.capture());
+            var schedule = schedulesCaptor.getValue().getFirst();
+            assertThat(schedule.getSpotifyId()).isEqualTo("hot");
+            assertThat(schedule.getRefreshIntervalSeconds()).isEqualTo(Duration.ofMinutes(5).toSeconds());
+            assertThat(schedule.getNextSyncDue()).isEqualTo(now.plusMinutes(5));
+            assertThat(schedule.getLastChanged()).isEqualTo(now);
+            assertThat(schedule.getUnchangedCount()).isZero();
+            assertThat(schedule.isNew()).isTrue();
+        }
+
+        @Test
+        @DisplayName("the interval should double while the artist does not change")
+        public void recordSynchronization2() {
+            var existingSchedule = schedule("hot", now).toBuilder()
+                    .refreshIntervalSeconds(Duration.ofMinutes(5).toSeconds())
+                    .unchangedCount(1)
+                    .lastChanged(now.minusDays(1))
+                    .persisted(true)
+                    .build();
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of(existingSchedule));
+
+            syncPlanner.recordSynchronization(List.of("hot"), List.of(artist("hot", 90)), Set.of(), now);
+
+            verify(artistSyncScheduleRepository).saveAll(schedulesCaptor.capture());
+            var schedule = schedulesCaptor.getValue().getFirst();
+            assertThat(schedule.getRefreshIntervalSeconds()).isEqualTo(Duration.ofMinutes(10).toSeconds());
+            assertThat(schedule.getNextSyncDue()).isEqualTo(now.plusMinutes(10));
+            assertThat(schedule.getLastChanged()).isEqualTo(now.minusDays(1));
+            assertThat(schedule.getUnchangedCount()).isEqualTo(2);
+            assertThat(schedule.isNew()).isFalse();
+        }
+
+        @Test
+        @DisplayName("artists that are missing in the api response should use the default ttl")
+        public void recordSynchronization3() {
+            when(artistSyncScheduleRepository.findAllBySpotifyIds(any())).thenReturn(List.of());
+
+            syncPlanner.recordSynchronization(List.of("missing"), List.of(), Set.of(), now);
+
+            verify(artistSyncScheduleRepository).saveAll(schedulesCaptor.capture());
+            assertThat(schedulesCaptor.getValue().getFirst().getNextSyncDue()).isEqualTo(now.plusHours(6));
+        }
+    }
+
+    @Nested
+    public class NextRefreshInterval {
+
+        @Test
+        @DisplayName("the interval should back off up to the maximum ttl")
+        public void nextRefreshInterval1() {
+            assertThat(syncPlanner.nextRefreshInterval(Duration.ofHours(2), Duration.ofMinutes(5), false)).isEqualTo(Duration.ofHours(4));
+            assertThat(syncPlanner.nextRefreshInterval(Duration.ofHours(16), Duration.ofMinutes(5), false)).isEqualTo(Duration.ofDays(1));
+        }
+
+        @Test
+        @DisplayName("the interval should shrink on changes but not below the minimum")
+        public void nextRefreshInterval2() {
+            assertThat(syncPlanner.nextRefreshInterval(Duration.ofHours(4), Duration.ofMinutes(5), true)).isEqualTo(Duration.ofHours(2));
+            assertThat(syncPlanner.nextRefreshInterval(Duration.ofMinutes(6), Duration.ofMinutes(5), true)).isEqualTo(Duration.ofMinutes(5));
+        }
+
+        @Test
+        @DisplayName("a minimum above the maximum ttl should win")
+        public void nextRefreshInterval3() {
+            assertThat(syncPlanner.nextRefreshInterval(Duration.ofDays(2), Duration.ofDays(2), false)).isEqualTo(Duration.ofDays(2));
+        }
+    }
+
+    @Test
+    @DisplayName("the ttl should depend on the popularity")
+    void ttlFor() {
+        assertThat(syncPlanner.ttlFor(100)).isEqualTo(Duration.ofMinutes(5));
+        assertThat(syncPlanner.ttlFor(70)).isEqualTo(Duration.ofMinutes(5));
+        assertThat(syncPlanner.ttlFor(69)).isEqualTo(Duration.ofMinutes(30));
+        assertThat(syncPlanner.ttlFor(0)).isEqualTo(Duration.ofHours(6));
+    }
+
+    private static ArtistSyncSchedule schedule(String spotifyId, LocalDateTime nextSyncDue) {
+        return ArtistSyncSchedule.builder()
+                .spotifyId(spotifyId)
+                .refreshIntervalSeconds(Duration.ofMinutes(5).toSeconds())
+                .nextSyncDue(nextSyncDue)
+                .build();
+    }
+
+    private static Artist artist(String spotifyId, int popularity) {
+        return Artist.builder().spotifyId(spotifyId).popularity(popularity).build();
+    }
+}
@@ -0,0 +1,43 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.sync.model.SyncRun;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatusCode;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SyncRunControllerTest {
+
+    @Mock
+    SyncJournal syncJournal;
+
+    @InjectMocks
+    SyncRunController syncRunController;
+
+    @Test
+    @DisplayName("should return the recent runs")
+    public void getRecentRuns1() {
+        var run = SyncRun.builder().id(1L).build();
+        when(syncJournal.getRecentRuns(20)).thenReturn(List.of(run));
+        var response = syncRunController.getRecentRuns(20);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.valueOf(200));
+        assertThat(response.getBody()).containsExactly(run);
+    }
+
+    @Test
+    @DisplayName("should limit the number of runs")
+    public void getRecentRuns2() {
+        when(syncJournal.getRecentRuns(200)).thenReturn(List.of());
+        var response = syncRunController.getRecentRuns(100000);
+        assertThat(response.getBody()).isEmpty();
+    }
+}
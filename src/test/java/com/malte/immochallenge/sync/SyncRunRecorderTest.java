@@ -0,0 +1,73 @@
+package com.malte.immochallenge.sync;
+
+import com.malte.immochallenge.model.SyncResult;
+import com.malte.immochallenge.sync.model.SyncRun;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncRunRecorderTest {
+
+    List<SyncRun> journal = new ArrayList<>();
+
+    SyncRunRecorder recorder = new SyncRunRecorder(SyncRun.builder().id(1L).plannedArtists(3).build(), run -> {
+        journal.add(run);
+        return run;
+    });
+
+    @Test
+    @DisplayName("the progress should be journaled whenever an artist is done, in any order")
+    void artistCompleted1() {
+        recorder.artistCompleted("b");
+
+        assertThat(journal).hasSize(1);
+        assertThat(journal.getLast().getProcessedArtists()).isEqualTo(1);
+
+        recorder.artistCompleted("a");
+
+        assertThat(journal).hasSize(2);
+        assertThat(journal.getLast().getProcessedArtists()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("failed artists should be counted and journaled")
+    void artistFailed() {
+        recorder.artistFailed("a");
+        recorder.artistCompleted("b");
+
+        var run = recorder.snapshot();
+        assertThat(run.getFailedArtists()).isEqualTo(1);
+        assertThat(run.getProcessedArtists()).isEqualTo(1);
+        assertThat(journal).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("an artist should only be counted once")
+    void artistCompleted2() {
+        recorder.artistCompleted("a");
+        recorder.artistCompleted("a");
+
+        assertThat(recorder.snapshot().getProcessedArtists()).isEqualTo(1);
+        assertThat(journal).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("counts and timings should be summed up")
+    void record() {
+        recorder.record(new SyncResult(List.of("1"), List.of("2", "3"), List.of("4"), List.of()));
+        recorder.record(new SyncResult(List.of("5"), List.of(), List.of(), List.of("6")));
+        recorder.addNanos(SyncRunRecorder.Phase.FETCH, 2_000_000);
+        recorder.addNanos(SyncRunRecorder.Phase.FETCH, 3_000_000);
+
+        var run = recorder.snapshot();
+        assertThat(run.getInserted()).isEqualTo(2);
+        assertThat(run.getUpdated()).isEqualTo(2);
+        assertThat(run.getUnchanged()).isEqualTo(1);
+        assertThat(run.getSkippedModified()).isEqualTo(1);
+        assertThat(run.getFetchMillis()).isEqualTo(5);
+    }
+}